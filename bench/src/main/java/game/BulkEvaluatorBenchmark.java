@@ -0,0 +1,97 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifying a million stored hands: one at a time the way checkHands()
+ * does it (a List<Card> per hand), and through BulkEvaluator from packed
+ * longs, card-index ints and a direct ByteBuffer, sequential and parallel.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkEvaluatorBenchmark {
+
+    static final int HANDS = 1 << 20;
+
+    private final Paytable paytable = Paytable.JACKS_OR_BETTER;
+    private final long[] packed = new long[HANDS];
+    private final int[] indices = new int[HANDS];
+    private final List<List<Card>> lists = new ArrayList<>(HANDS);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(8 * HANDS).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] categories = new byte[HANDS];
+
+    @Setup
+    public void setup() throws PlayingCardException {
+        Decks decks = new Decks(1, new SplittableRandom(42));
+        for (int i = 0; i < HANDS; i++) {
+            decks.reset();
+            decks.shuffle();
+            List<Card> hand = decks.deal(5);
+            lists.add(hand);
+            packed[i] = HandEvaluator.pack(hand);
+            for (int k = 0; k < 5; k++) {
+                indices[i] |= hand.get(k).getIndex() << (6 * k);
+            }
+            buffer.putLong(8 * i, packed[i]);
+        }
+    }
+
+    /* the per-hand path: pack each List<Card>, then evaluate it */
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public byte[] perHand() {
+        for (int i = 0; i < HANDS; i++) {
+            categories[i] = (byte) HandEvaluator.evaluate(HandEvaluator.pack(lists.get(i)));
+        }
+        return categories;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public byte[] bulkPacked() {
+        BulkEvaluator.evaluate(paytable, packed, 0, HANDS, categories, 0, false);
+        return categories;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public byte[] bulkPackedParallel() {
+        BulkEvaluator.evaluate(paytable, packed, 0, HANDS, categories, 0, true);
+        return categories;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public byte[] bulkIndices() {
+        BulkEvaluator.evaluate(paytable, indices, 0, HANDS, categories, 0, false);
+        return categories;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public byte[] bulkBuffer() {
+        BulkEvaluator.evaluate(paytable, buffer, categories, 0, false);
+        return categories;
+    }
+}
@@ -0,0 +1,39 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Card lookup: checked Card.of(rank, suit) and unchecked Card.get(index).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardBenchmark {
+
+    private int index;
+
+    @Benchmark
+    public Card cardOf() throws PlayingCardException {
+        index = (index + 1) % Card.CARDS;
+        return Card.of(index % 13 + 1, index / 13);
+    }
+
+    @Benchmark
+    public Card cardGet() {
+        index = (index + 1) % Card.CARDS;
+        return Card.get(index);
+    }
+}
@@ -0,0 +1,64 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of reset -> shuffle -> deal of a ten-card round (deal and draw),
+ * with the deck shuffling by itself and with pre-shuffled decks from a pool.
+ * The pool's starvation is printed at teardown: on fewer cores than
+ * producers plus consumers the producer cannot keep up and pooled deals fall
+ * back to shuffling by themselves.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeckPoolBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private DeckPool pool;
+    private Decks decks;
+    private final int[] cards = new int[10];
+
+    @Setup
+    public void setup() {
+        decks = new Decks(1, DeckRandom.splittable(42));
+        if (pooled) {
+            pool = new DeckPool(1, 0, 4096, 1, DeckRandom.splittable(43));
+            decks.pool(pool);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            System.out.println(pool);
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public int deal() throws PlayingCardException {
+        decks.reset();
+        decks.shuffle();
+        decks.deal(cards, 0, cards.length);
+        return cards[0] + cards[9];
+    }
+}
@@ -0,0 +1,69 @@
+package game;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One round of deck work, reset -> shuffle -> deal, with 1 and 8 decks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecksBenchmark {
+
+    @Param({"1", "8"})
+    public int numberDecks;
+
+    private Decks decks;
+    private final int[] cards = new int[10];
+
+    @Setup
+    public void setup() {
+        decks = new Decks(numberDecks);
+    }
+
+    /* a video poker round: 5 dealt plus up to 5 replacements */
+    @Benchmark
+    public int resetShuffleDeal10() throws PlayingCardException {
+        decks.reset();
+        decks.shuffle();
+        decks.deal(cards, 0, 10);
+        return cards[9];
+    }
+
+    /* same through the List<Card> API */
+    @Benchmark
+    public List<Card> resetShuffleDealList5() throws PlayingCardException {
+        decks.reset();
+        decks.shuffle();
+        return decks.deal(5);
+    }
+
+    /* the whole shoe, to show what a full shuffle costs */
+    @Benchmark
+    public int resetShuffleDealAll() throws PlayingCardException {
+        decks.reset();
+        decks.shuffle();
+        int last = 0;
+        while (decks.remain() >= cards.length) {
+            decks.deal(cards, 0, cards.length);
+            last += cards[9];
+        }
+        return last;
+    }
+}
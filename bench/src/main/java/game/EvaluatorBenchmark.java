@@ -0,0 +1,162 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hand classification as done by checkHands(): on random hands and on the
+ * hands that take the longest path through the evaluator (full houses and
+ * quads), from packed hands and from List<Card>; the wild-card games on
+ * random hands of their own decks; Hold'em strength of random 7-card
+ * hands; and the suit-isomorphism class of random hands, against the colex
+ * index of the strategy table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+    static final int HANDS = 4096;
+
+    private final long[] random = new long[HANDS];
+    private final long[] worstCase = new long[HANDS];
+    private final long[] randomJoker = new long[HANDS];
+    private final long[] randomSeven = new long[HANDS];
+    private final List<List<Card>> randomLists = new ArrayList<>(HANDS);
+
+    @Setup
+    public void setup() throws PlayingCardException {
+        SplittableRandom rng = new SplittableRandom(42);
+        Decks decks = new Decks(1, rng.split());
+        Decks jokerDecks = new Decks(1, 1, rng.split());
+        Decks sevenDecks = new Decks(1, new SplittableRandom(7));
+        for (int i = 0; i < HANDS; i++) {
+            jokerDecks.reset();
+            jokerDecks.shuffle();
+            randomJoker[i] = HandEvaluator.pack(jokerDecks.deal(5));
+
+            sevenDecks.reset();
+            sevenDecks.shuffle();
+            randomSeven[i] = HandEvaluator.pack(sevenDecks.deal(7));
+
+            decks.reset();
+            decks.shuffle();
+            List<Card> hand = decks.deal(5);
+            randomLists.add(hand);
+            random[i] = HandEvaluator.pack(hand);
+
+            // three of one rank and two (or four and one) of another
+            int high = rng.nextInt(13) + 1;
+            int low = (high + rng.nextInt(12)) % 13 + 1;
+            long hand2 = 0;
+            for (int suit = 0; suit < 4; suit++) {
+                hand2 |= HandEvaluator.bit(high, suit);
+            }
+            if ((i & 1) == 0) {
+                hand2 &= ~HandEvaluator.bit(high, rng.nextInt(4));
+                hand2 |= HandEvaluator.bit(low, 0) | HandEvaluator.bit(low, 1);
+            } else {
+                hand2 |= HandEvaluator.bit(low, rng.nextInt(4));
+            }
+            worstCase[i] = hand2;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int evaluateRandom() {
+        int sum = 0;
+        for (long hand : random) {
+            sum += HandEvaluator.evaluate(hand);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int evaluateWorstCase() {
+        int sum = 0;
+        for (long hand : worstCase) {
+            sum += HandEvaluator.evaluate(hand);
+        }
+        return sum;
+    }
+
+    /* checkHands() path: pack a List<Card>, then evaluate */
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int checkHandsRandom() {
+        int sum = 0;
+        for (int i = 0; i < HANDS; i++) {
+            sum += HandEvaluator.evaluate(HandEvaluator.pack(randomLists.get(i)));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int deucesWildRandom() {
+        int sum = 0;
+        for (long hand : random) {
+            sum += WildEvaluator.evaluateDeucesWild(hand);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int jokerPokerRandom() {
+        int sum = 0;
+        for (long hand : randomJoker) {
+            sum += WildEvaluator.evaluateJokerPoker(hand);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int holdemRandom() {
+        int sum = 0;
+        for (long hand : randomSeven) {
+            sum += HoldemEvaluator.evaluate(hand);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int classCodeRandom() {
+        int sum = 0;
+        for (long hand : random) {
+            sum += HandClasses.code(hand);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HANDS)
+    public int colexIndexRandom() {
+        int sum = 0;
+        for (long hand : random) {
+            sum += StrategyTable.index(hand);
+        }
+        return sum;
+    }
+}
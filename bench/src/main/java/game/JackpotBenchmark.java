@@ -0,0 +1,42 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Jackpot contributions from several threads at once: the striped pool
+ * against a single shared atomic counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JackpotBenchmark {
+
+    private final Jackpot jackpot = new Jackpot(4000, 125);
+    private final AtomicLong shared = new AtomicLong();
+
+    @Benchmark
+    public void striped() {
+        jackpot.contribute(5);
+    }
+
+    @Benchmark
+    public long sharedCounter() {
+        return shared.addAndGet(5 * 125);
+    }
+}
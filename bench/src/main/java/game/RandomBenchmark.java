@@ -0,0 +1,85 @@
+package game;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The random choices of 1024 five-card deals: from one java.util.Random
+ * shared by all benchmark threads (the old shuffle path), from a generator
+ * per thread one call at a time, and in bulk with fillIndices().
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+public class RandomBenchmark {
+
+    static final int DEALS = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final Random random = new Random(42);
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        final DeckRandom splittable = DeckRandom.splittable(42);
+        final DeckRandom xoshiro = DeckRandom.xoshiro(42);
+        final int[] indices = new int[5 * DEALS];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEALS)
+    public int sharedRandom(Shared shared, PerThread local) {
+        for (int k = 0; k < local.indices.length; k++) {
+            local.indices[k] = shared.random.nextInt(52 - k % 5);
+        }
+        return local.indices[local.indices.length - 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEALS)
+    public int splittable(PerThread local) {
+        for (int k = 0; k < local.indices.length; k++) {
+            local.indices[k] = local.splittable.nextInt(52 - k % 5);
+        }
+        return local.indices[local.indices.length - 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEALS)
+    public int xoshiro(PerThread local) {
+        for (int k = 0; k < local.indices.length; k++) {
+            local.indices[k] = local.xoshiro.nextInt(52 - k % 5);
+        }
+        return local.indices[local.indices.length - 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEALS)
+    public int splittableBulk(PerThread local) {
+        local.splittable.fillIndices(local.indices, 0, 52, 5, DEALS);
+        return local.indices[local.indices.length - 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEALS)
+    public int xoshiroBulk(PerThread local) {
+        local.xoshiro.fillIndices(local.indices, 0, 52, 5, DEALS);
+        return local.indices[local.indices.length - 1];
+    }
+}
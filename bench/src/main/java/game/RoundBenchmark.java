@@ -0,0 +1,67 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full round through the session engine: bet -> deal -> draw -> settle,
+ * holding what the simple pay-hand strategy keeps, with 1 to 100 hands per
+ * round, with and without GameMetrics.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoundBenchmark {
+
+    @Param({"1", "3", "10", "100"})
+    public int hands;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private final Paytable paytable = Paytable.JACKS_OR_BETTER;
+    private GameMetrics gameMetrics;
+    private GameSession session;
+
+    @Setup
+    public void setup() {
+        gameMetrics = metrics ? new GameMetrics(paytable) : null;
+        session = newSession();
+    }
+
+    private GameSession newSession() {
+        return new GameSession(Integer.MAX_VALUE / 2, paytable, hands).metrics(gameMetrics);
+    }
+
+    @Benchmark
+    public GameSession.Round round() {
+        if (session.balance() < 1000) {
+            session = newSession();
+        }
+        session.bet(1);
+        GameSession.Round dealt = session.deal();
+        long held = Strategy.KEEP_PAYING.heldCards(dealt.hand());
+        int holdMask = 0;
+        for (int i = 0; i < 5; i++) {
+            if ((held & Card.bit(dealt.card(i))) != 0) {
+                holdMask |= 1 << i;
+            }
+        }
+        session.draw(holdMask);
+        return session.settle();
+    }
+}
@@ -0,0 +1,437 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * class BatchPlay replays a script of seeded rounds through a GameSession,
+ * without a player: for regression runs and load replay.
+ *
+ * Each script line is one round, "seed bet holds": the seed of the deck's
+ * generator for the round, the bet per hand, and the positions (1-5) of the
+ * cards to keep, written together ("145"), or "-" to keep none. Blank lines
+ * and lines starting with '#' are skipped. Each round reseeds a deck put back
+ * in order (Decks.order()), so a round's cards depend on its seed only, not on
+ * the rounds before it.
+ *
+ * Each round writes one line, "seed dealt holds final category payout
+ * balance", with the cards as two characters each (rank A23456789TJQK, suit
+ * cdhs, "**" for the joker), the HandEvaluator category of hand 0 and the
+ * total payout of all hands. A line that cannot be played writes
+ * "! line <n>: <reason>" and the script goes on.
+ *
+ * The script is read in blocks into one reused buffer and parsed byte by byte,
+ * and the output is built in another, so memory use does not grow with the
+ * script. Rounds do not allocate beyond the session's own Round results.
+ */
+final class BatchPlay {
+
+    /* size of the input and output buffers */
+    static final int BUFFER = 1 << 20;
+
+    /* longest output line: 20 digit seed, cards, holds, numbers */
+    private static final int MAX_LINE = 128;
+
+    private static final byte[] ranks = "A23456789TJQK".getBytes();
+    private static final byte[] suits = "cdhs".getBytes();
+
+    private final GameSession session;
+    private final Decks deck;
+    private final Xoshiro256 random;
+
+    private final byte[] in = new byte[BUFFER];
+    private final byte[] out = new byte[BUFFER];
+    private int outPosition;
+    private WritableByteChannel output;
+
+    /* state of the current script */
+    private long lineNumber;
+    private long rounds;
+    private long errors;
+
+    /**
+     * Creates a batch player.
+     *
+     * @param balance     starting balance
+     * @param paytable    game played
+     * @param numberHands hands per round, 1-100
+     */
+    BatchPlay(int balance, Paytable paytable, int numberHands) {
+        random = new Xoshiro256(0);
+        deck = new Decks(1, paytable.jokers(), random);
+        session = new GameSession(balance, deck, paytable, numberHands);
+    }
+
+    int balance() {
+        return session.balance();
+    }
+
+    /**
+     * Plays every round of a script.
+     *
+     * @param script rounds, one per line
+     * @param output results, one line per round or rejected line
+     * @return rounds played and lines rejected
+     * @throws IOException if reading or writing fails, or a line is longer
+     *                     than BUFFER
+     */
+    Summary play(ReadableByteChannel script, WritableByteChannel output) throws IOException {
+        this.output = output;
+        outPosition = 0;
+        lineNumber = 0;
+        rounds = 0;
+        errors = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(in);
+        int start = 0;  /* first byte of the current line */
+        int end = 0;    /* end of the bytes read */
+        int scan = 0;   /* bytes before scan hold no newline */
+        boolean eof = false;
+        while (true) {
+            int newline = scan;
+            while (newline < end && in[newline] != '\n') {
+                newline++;
+            }
+            if (newline < end) {
+                line(start, newline);
+                start = newline + 1;
+                scan = start;
+            } else if (eof) {
+                if (start < end) {
+                    line(start, end);
+                }
+                break;
+            } else {
+                // move the partial line to the front and read more
+                System.arraycopy(in, start, in, 0, end - start);
+                end -= start;
+                scan = end;
+                start = 0;
+                if (end == in.length) {
+                    throw new IOException("Line " + (lineNumber + 1) + " longer than " + BUFFER + " bytes");
+                }
+                buffer.limit(in.length).position(end);
+                int read = script.read(buffer);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            }
+        }
+        flush();
+        this.output = null;
+        return new Summary(rounds, errors, session.balance());
+    }
+
+    /* parses and plays the line in[start, end) */
+    private void line(int start, int end) throws IOException {
+        lineNumber++;
+        if (end > start && in[end - 1] == '\r') {
+            end--;
+        }
+        int i = skipSpaces(start, end);
+        if (i == end || in[i] == '#') {
+            return;
+        }
+
+        // seed: optionally signed decimal, summed as a negative value as in
+        // Long.parseLong so that Long.MIN_VALUE fits
+        boolean negative = in[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        int digits = i;
+        long seed = 0;
+        while (i < end && in[i] >= '0' && in[i] <= '9') {
+            int digit = in[i++] - '0';
+            if (seed < limit / 10 || seed * 10 < limit + digit) {
+                error("seed out of range");
+                return;
+            }
+            seed = seed * 10 - digit;
+        }
+        if (i == digits || i == end || in[i] != ' ' && in[i] != '\t') {
+            error("seed expected");
+            return;
+        }
+        if (!negative) {
+            seed = -seed;
+        }
+
+        // bet: positive decimal
+        i = skipSpaces(i, end);
+        digits = i;
+        long bet = 0;
+        while (i < end && in[i] >= '0' && in[i] <= '9') {
+            bet = Math.min(bet * 10 + (in[i++] - '0'), Integer.MAX_VALUE + 1L);
+        }
+        if (i == digits || i == end || in[i] != ' ' && in[i] != '\t') {
+            error("bet expected");
+            return;
+        }
+        if (bet == 0 || bet * session.numberHands() > session.balance()) {
+            error("invalid bet " + (bet > Integer.MAX_VALUE ? "over " + Integer.MAX_VALUE : bet)
+                    + ", balance " + session.balance());
+            return;
+        }
+
+        // holds: positions 1-5, or '-'
+        i = skipSpaces(i, end);
+        int holdMask = 0;
+        if (i < end && in[i] == '-') {
+            i++;
+        } else {
+            digits = i;
+            while (i < end && in[i] >= '1' && in[i] <= '5') {
+                holdMask |= 1 << (in[i++] - '1');
+            }
+            if (i == digits) {
+                error("positions 1-5 or - expected");
+                return;
+            }
+        }
+        if (skipSpaces(i, end) != end) {
+            error("unexpected text after positions");
+            return;
+        }
+
+        play(seed, (int) bet, holdMask);
+    }
+
+    /* plays one round and writes its result */
+    private void play(long seed, int bet, int holdMask) throws IOException {
+        deck.order();
+        random.seed(seed);
+        session.bet(bet);
+        GameSession.Round dealt = session.deal();
+        if (outPosition > out.length - MAX_LINE) {
+            flush();
+        }
+        writeLong(seed);
+        out[outPosition++] = ' ';
+        writeCards(dealt);
+        out[outPosition++] = ' ';
+        if (holdMask == 0) {
+            out[outPosition++] = '-';
+        }
+        for (int p = 0; p < 5; p++) {
+            if ((holdMask & (1 << p)) != 0) {
+                out[outPosition++] = (byte) ('1' + p);
+            }
+        }
+        out[outPosition++] = ' ';
+        session.draw(holdMask);
+        GameSession.Round settled = session.settle();
+        writeCards(settled);
+        out[outPosition++] = ' ';
+        writeLong(settled.category());
+        out[outPosition++] = ' ';
+        writeLong(settled.payout());
+        out[outPosition++] = ' ';
+        writeLong(settled.balance());
+        out[outPosition++] = '\n';
+        rounds++;
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end && (in[i] == ' ' || in[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /* writes a rejected line; rare, so it may allocate */
+    private void error(String reason) throws IOException {
+        errors++;
+        byte[] message = ("! line " + lineNumber + ": " + reason + "\n").getBytes();
+        if (outPosition > out.length - message.length) {
+            flush();
+        }
+        System.arraycopy(message, 0, out, outPosition, message.length);
+        outPosition += message.length;
+    }
+
+    private void writeCards(GameSession.Round round) {
+        for (int i = 0; i < 5; i++) {
+            int index = round.card(i);
+            if (index == Card.JOKER) {
+                out[outPosition++] = '*';
+                out[outPosition++] = '*';
+            } else {
+                out[outPosition++] = ranks[index % 13];
+                out[outPosition++] = suits[index / 13];
+            }
+        }
+    }
+
+    /* decimal digits of a value, without a String */
+    private void writeLong(long value) {
+        if (value < 0) {
+            out[outPosition++] = '-';
+        } else {
+            value = -value;
+        }
+        // digits of the negative value, so Long.MIN_VALUE works too
+        int length = 1;
+        for (long v = value; v <= -10; v /= 10) {
+            length++;
+        }
+        for (int i = outPosition + length - 1; i >= outPosition; i--) {
+            out[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        outPosition += length;
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(out, 0, outPosition);
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        outPosition = 0;
+    }
+
+    /**
+     * class Summary (immutable): rounds played and lines rejected by a script
+     */
+    static final class Summary {
+
+        private final long rounds;
+        private final long errors;
+        private final int balance;
+
+        private Summary(long rounds, long errors, int balance) {
+            this.rounds = rounds;
+            this.errors = errors;
+            this.balance = balance;
+        }
+
+        long rounds() {
+            return rounds;
+        }
+
+        long errors() {
+            return errors;
+        }
+
+        /* balance after the last round */
+        int balance() {
+            return balance;
+        }
+
+        @Override
+        public String toString() {
+            return rounds + " rounds, " + errors + " rejected lines, balance " + balance;
+        }
+    }
+
+    /**
+     * Writes a script of random rounds: random seeds, bet 1, random holds.
+     */
+    static void generate(Path script, long rounds, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder line = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long r = 0; r < rounds; r++) {
+                line.setLength(0);
+                line.append(random.nextLong()).append(" 1 ");
+                int holdMask = random.nextInt(32);
+                if (holdMask == 0) {
+                    line.append('-');
+                }
+                for (int p = 0; p < 5; p++) {
+                    if ((holdMask & (1 << p)) != 0) {
+                        line.append(p + 1);
+                    }
+                }
+                line.append('\n');
+                if (buffer.remaining() < line.length()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                for (int i = 0; i < line.length(); i++) {
+                    buffer.put((byte) line.charAt(i));
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /*
+     * Plays a script: BatchPlay <script|-> [output|-] [balance] [hands].
+     * Without arguments, quick test: generate a script, play it twice and
+     * compare the outputs.
+     */
+    public static void main(String args[]) throws IOException {
+        if (args.length > 0) {
+            int balance = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE / 2;
+            int hands = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            BatchPlay batch = new BatchPlay(balance, Paytable.JACKS_OR_BETTER, hands);
+            try (ReadableByteChannel script = args[0].equals("-") ? Channels.newChannel(System.in)
+                    : FileChannel.open(Paths.get(args[0]));
+                    WritableByteChannel output = args.length < 2 || args[1].equals("-")
+                    ? Channels.newChannel(System.out)
+                    : FileChannel.open(Paths.get(args[1]), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                System.err.println(batch.play(script, output));
+            }
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("batch");
+        Path script = directory.resolve("script.txt");
+        long rounds = 1000000;
+        generate(script, rounds, 1);
+        Files.write(script, ("# comment\n\n1 2 x\n1 0 12\n1 99999999999 1\n99999999999999999999 1 1\n"
+                + Long.MIN_VALUE + " 1 -\r\n").getBytes(), StandardOpenOption.APPEND);
+
+        byte[][] results = new byte[2][];
+        for (int run = 0; run < 2; run++) {
+            Path result = directory.resolve("result" + run + ".txt");
+            BatchPlay batch = new BatchPlay(Integer.MAX_VALUE / 2, Paytable.JACKS_OR_BETTER, 1);
+            long start = System.nanoTime();
+            Summary summary;
+            try (FileChannel in = FileChannel.open(script);
+                    FileChannel out = FileChannel.open(result, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                summary = batch.play(in, out);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%s in %d ms, %.0f rounds/s, %.1f MB/s of script%n", summary, elapsed / 1000000,
+                    summary.rounds() * 1e9 / elapsed, Files.size(script) * 1e3 / elapsed);
+            results[run] = Files.readAllBytes(result);
+        }
+        System.out.println("runs identical: " + Arrays.equals(results[0], results[1]));
+        String text = new String(results[0]);
+        int tail = text.length();
+        for (int lines = 0; lines < 4; lines++) {
+            tail = text.lastIndexOf('\n', tail - 1);
+        }
+        System.out.print("first: " + text.substring(0, text.indexOf('\n') + 1) + "last:\n"
+                + text.substring(tail + 1));
+
+        for (String name : new String[]{"script.txt", "result0.txt", "result1.txt"}) {
+            Files.delete(directory.resolve(name));
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,81 @@
+package game;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * class BoundedCache keeps the results of expensive computations, at most
+ * capacity of them, evicting the least recently used.
+ *
+ * A value is computed once per key even when many threads ask for it at the
+ * same time: the first caller computes it outside the lock, the others wait
+ * for that result. A failed computation is not cached.
+ */
+final class BoundedCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, CompletableFuture<V>> entries;
+
+    BoundedCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<K, CompletableFuture<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
+                return size() > BoundedCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the value of key, computing it if it is not cached.
+     */
+    V get(K key, Function<? super K, ? extends V> compute) {
+        CompletableFuture<V> value;
+        boolean owner = false;
+        synchronized (this) {
+            value = entries.get(key);
+            if (value == null) {
+                value = new CompletableFuture<>();
+                entries.put(key, value);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                value.complete(compute.apply(key));
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    entries.remove(key, value);
+                }
+                value.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /* number of cached values, including ones being computed */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /* drops every cached value */
+    synchronized void clear() {
+        entries.clear();
+    }
+}
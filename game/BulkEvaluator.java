@@ -0,0 +1,199 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * class BulkEvaluator classifies many hands at once, for analytics jobs such
+ * as re-scoring a hand history against another paytable.
+ *
+ * Hands come as packed longs (see HandEvaluator), as ints holding five 6-bit
+ * card indices (card 0 in the low bits, as GameSession.Round keeps them) or
+ * as a region of little- or big-endian longs in a ByteBuffer. Categories are
+ * written to a byte array. The game's evaluator is chosen once per call, so
+ * the inner loops are plain loops over primitive arrays. With parallel set,
+ * ranges longer than CHUNK are split across the common fork-join pool; every
+ * task writes its own part of the output.
+ */
+public final class BulkEvaluator {
+
+    /* hands classified by one task */
+    static final int CHUNK = 1 << 16;
+
+    private BulkEvaluator() {
+    }
+
+    /**
+     * Classifies natural hands[from, to) into categories[offset...].
+     */
+    public static void evaluate(long[] hands, int from, int to, byte[] categories, int offset) {
+        for (int i = from; i < to; i++) {
+            categories[offset + i - from] = (byte) HandEvaluator.evaluate(hands[i]);
+        }
+    }
+
+    /**
+     * Classifies hands[from, to) by the rules of a paytable's game into
+     * categories[offset...].
+     */
+    static void evaluate(Paytable paytable, long[] hands, int from, int to, byte[] categories, int offset,
+            boolean parallel) {
+        check(hands.length, from, to, categories, offset);
+        if (parallel) {
+            split(from, to, (a, b) -> evaluate(paytable, hands, a, b, categories, offset + a - from, false));
+            return;
+        }
+        switch (paytable.wild()) {
+            case WildEvaluator.DEUCES:
+                for (int i = from; i < to; i++) {
+                    categories[offset + i - from] = (byte) WildEvaluator.evaluateDeucesWild(hands[i]);
+                }
+                break;
+            case WildEvaluator.JOKER:
+                for (int i = from; i < to; i++) {
+                    categories[offset + i - from] = (byte) WildEvaluator.evaluateJokerPoker(hands[i]);
+                }
+                break;
+            default:
+                evaluate(hands, from, to, categories, offset);
+        }
+    }
+
+    /**
+     * Classifies hands of five 6-bit card indices, hands[from, to), into
+     * categories[offset...].
+     */
+    static void evaluate(Paytable paytable, int[] hands, int from, int to, byte[] categories, int offset,
+            boolean parallel) {
+        check(hands.length, from, to, categories, offset);
+        if (parallel) {
+            split(from, to, (a, b) -> evaluate(paytable, hands, a, b, categories, offset + a - from, false));
+            return;
+        }
+        long[] packed = new long[Math.min(to - from, 1024)];
+        for (int start = from; start < to; start += packed.length) {
+            int end = Math.min(to, start + packed.length);
+            for (int i = start; i < end; i++) {
+                int cards = hands[i];
+                packed[i - start] = Card.bit(cards & 0x3F) | Card.bit((cards >>> 6) & 0x3F)
+                        | Card.bit((cards >>> 12) & 0x3F) | Card.bit((cards >>> 18) & 0x3F)
+                        | Card.bit((cards >>> 24) & 0x3F);
+            }
+            evaluate(paytable, packed, 0, end - start, categories, offset + start - from, false);
+        }
+    }
+
+    /**
+     * Classifies the packed longs between a buffer's position and limit, in
+     * the buffer's byte order, into categories[offset...]. The buffer's
+     * position is not changed.
+     */
+    static void evaluate(Paytable paytable, ByteBuffer hands, byte[] categories, int offset, boolean parallel) {
+        int base = hands.position();
+        int count = hands.remaining() >>> 3;
+        check(count, 0, count, categories, offset);
+        if (parallel) {
+            split(0, count, (a, b) -> evaluate(paytable, hands, base, a, b, categories, offset + a));
+            return;
+        }
+        evaluate(paytable, hands, base, 0, count, categories, offset);
+    }
+
+    private static void evaluate(Paytable paytable, ByteBuffer hands, int base, int from, int to,
+            byte[] categories, int offset) {
+        long[] packed = new long[Math.min(to - from, 1024)];
+        for (int start = from; start < to; start += packed.length) {
+            int end = Math.min(to, start + packed.length);
+            for (int i = start; i < end; i++) {
+                packed[i - start] = hands.getLong(base + 8 * i);
+            }
+            evaluate(paytable, packed, 0, end - start, categories, offset + start - from, false);
+        }
+    }
+
+    /**
+     * Returns the total payout per unit bet of hands[from, to) whose
+     * categories were written by evaluate().
+     */
+    static long totalPayout(Paytable paytable, long[] hands, int from, int to, byte[] categories, int offset) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += paytable.payout(hands[i], categories[offset + i - from]);
+        }
+        return total;
+    }
+
+    private static void check(int length, int from, int to, byte[] categories, int offset) {
+        if (from < 0 || to > length || from > to || offset < 0 || offset + to - from > categories.length) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + length
+                    + " into " + categories.length + " at " + offset);
+        }
+    }
+
+    /* runs action over [from, to) in CHUNK sized pieces on the common pool */
+    private static void split(int from, int to, Range action) {
+        ForkJoinPool.commonPool().invoke(new Chunks(from, to, action));
+    }
+
+    /* work on a range of hands */
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    private static final class Chunks extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Range action;
+
+        Chunks(int from, int to, Range action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Chunks(from, mid, action), new Chunks(mid, to, action));
+            } else {
+                action.run(from, to);
+            }
+        }
+    }
+
+    /* Quick test: classify a few million random hands, sequential and
+     * parallel, and re-score them against another paytable */
+    public static void main(String args[]) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        long[] hands = new long[count];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < count; i++) {
+            long hand = 0;
+            while (Long.bitCount(hand) < 5) {
+                hand |= Card.bit(random.nextInt(Card.CARDS));
+            }
+            hands[i] = hand;
+        }
+        byte[] sequential = new byte[count];
+        byte[] parallel = new byte[count];
+
+        long start = System.nanoTime();
+        evaluate(Paytable.JACKS_OR_BETTER, hands, 0, count, sequential, 0, false);
+        long middle = System.nanoTime();
+        evaluate(Paytable.JACKS_OR_BETTER, hands, 0, count, parallel, 0, true);
+        long end = System.nanoTime();
+
+        System.out.println("sequential " + (middle - start) / 1000000 + " ms, parallel "
+                + (end - middle) / 1000000 + " ms, same: " + Arrays.equals(sequential, parallel));
+        System.out.println("Jacks or Better pays " + totalPayout(Paytable.JACKS_OR_BETTER, hands, 0, count,
+                sequential, 0) + ", Bonus Poker pays " + totalPayout(Paytable.BONUS_POKER, hands, 0, count,
+                sequential, 0));
+    }
+}
@@ -0,0 +1,82 @@
+package game;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * class ClassCache keeps one result per suit-isomorphism class of 5-card
+ * hands (see HandClasses), in an array indexed by class id: a result worked
+ * out on the canonical hand of a class serves every hand of the class, once
+ * brought back to the hand's suits with HandClasses.original().
+ *
+ * As in BoundedCache, a result is computed once even when many threads ask
+ * for it at the same time: the first caller computes it, the others wait for
+ * that result. A failed computation is not cached. Nothing is ever evicted:
+ * a full cache holds CLASSES results.
+ */
+final class ClassCache<V> {
+
+    private final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(HandClasses.CLASSES);
+
+    /**
+     * Returns the result of a class, computing it if it is not cached.
+     *
+     * @param id      class id, 0 to HandClasses.CLASSES - 1
+     * @param compute result of a class id
+     */
+    @SuppressWarnings("unchecked")
+    V get(int id, IntFunction<? extends V> compute) {
+        Object result = results.get(id);
+        if (result != null && !(result instanceof Pending)) {
+            return (V) result;
+        }
+        if (result == null) {
+            Pending pending = new Pending();
+            if (results.compareAndSet(id, null, pending)) {
+                try {
+                    V value = compute.apply(id);
+                    results.set(id, value);
+                    pending.complete(value);
+                    return value;
+                } catch (RuntimeException | Error e) {
+                    results.compareAndSet(id, pending, null);
+                    pending.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            result = results.get(id);
+            if (!(result instanceof Pending)) {
+                return result == null ? get(id, compute) : (V) result;
+            }
+        }
+        try {
+            return (V) ((Pending) result).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /* number of classes with a result, not counting ones being computed */
+    int size() {
+        int size = 0;
+        for (int id = 0; id < HandClasses.CLASSES; id++) {
+            Object result = results.get(id);
+            if (result != null && !(result instanceof Pending)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /* a result being computed */
+    private static final class Pending extends CompletableFuture<Object> {
+    }
+}
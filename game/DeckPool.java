@@ -0,0 +1,243 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * class DeckPool keeps a ring buffer of pre-shuffled decks, filled by
+ * background producer threads, so that shuffling costs a consumer one array
+ * copy instead of random numbers.
+ *
+ * The ring is a bounded multi-producer multi-consumer queue without locks
+ * (Vyukov): every slot owns a permutation array and a sequence number telling
+ * whether it is free or full for the current lap. A producer claims the free
+ * slot at the tail, shuffles its array in place and publishes it; a consumer
+ * claims the full slot at the head, copies the array out and frees it. When
+ * the ring is empty take() fails at once and counts the miss as a
+ * starvation; the caller shuffles by itself. Producers sleep while the ring
+ * is full and are woken when it drains to half or a consumer starves.
+ *
+ * Decks taken from a pool do not depend on the consumer's own generator, so
+ * a pooled deck with a seeded generator no longer deals repeatably.
+ */
+final class DeckPool implements AutoCloseable {
+
+    /* longest a producer sleeps on a full ring before looking again */
+    private static final long PARK_NANOS = 1000000;
+
+    private final int cards;
+    private final int[][] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread[] producers;
+
+    private volatile boolean closed;
+    /* set by a producer before it sleeps on a full ring */
+    private volatile boolean sleeping;
+
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder starved = new LongAdder();
+    private final LongAdder produced = new LongAdder();
+
+    /**
+     * Creates a pool and starts its producers.
+     *
+     * @param decks     decks per permutation, as in Decks
+     * @param jokers    jokers per deck
+     * @param depth     permutations kept ready, rounded up to a power of two
+     * @param producers number of producer threads
+     * @param random    generator split once per producer
+     */
+    DeckPool(int decks, int jokers, int depth, int producers, DeckRandom random) {
+        if (decks < 1 || jokers < 0 || depth < 1 || depth > 1 << 20 || producers < 1) {
+            throw new IllegalArgumentException("Invalid pool: " + decks + " decks, " + jokers + " jokers, depth "
+                    + depth + ", " + producers + " producers");
+        }
+        int deckSize = Card.CARDS + jokers;
+        int capacity = depth == 1 ? 1 : Integer.highestOneBit(depth - 1) << 1;
+        this.cards = decks * deckSize;
+        this.mask = capacity - 1;
+        this.slots = new int[capacity][cards];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int s = 0; s < capacity; s++) {
+            for (int i = 0; i < cards; i++) {
+                slots[s][i] = Math.min(i % deckSize, Card.JOKER);
+            }
+            sequences.set(s, s);
+        }
+
+        this.producers = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            DeckRandom split = random.split();
+            Thread thread = new Thread(() -> produce(split), "deck-pool-" + p);
+            thread.setDaemon(true);
+            this.producers[p] = thread;
+        }
+        for (Thread thread : this.producers) {
+            thread.start();
+        }
+    }
+
+    /* number of cards in every permutation */
+    int cards() {
+        return cards;
+    }
+
+    /* number of permutations the ring holds */
+    int depth() {
+        return mask + 1;
+    }
+
+    /* permutations ready now; a snapshot that may be stale at once */
+    int level() {
+        long level = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(level, mask + 1));
+    }
+
+    /* permutations handed out */
+    long taken() {
+        return taken.sum();
+    }
+
+    /* take() calls that found the ring empty */
+    long starved() {
+        return starved.sum();
+    }
+
+    /* permutations shuffled by the producers */
+    long produced() {
+        return produced.sum();
+    }
+
+    /**
+     * Copies the next pre-shuffled permutation into deck[0, cards()).
+     *
+     * @return false, without waiting, if none is ready
+     */
+    boolean take(int[] deck) {
+        long pos = head.get();
+        while (true) {
+            int slot = (int) pos & mask;
+            long delta = sequences.get(slot) - (pos + 1);
+            if (delta == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    System.arraycopy(slots[slot], 0, deck, 0, cards);
+                    sequences.set(slot, pos + mask + 1);
+                    taken.increment();
+                    if (sleeping && tail.get() - pos <= (mask + 1) / 2) {
+                        wake();
+                    }
+                    return true;
+                }
+                pos = head.get();
+            } else if (delta < 0) {
+                starved.increment();
+                wake();
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /* producer loop: claim the tail slot, shuffle it, publish it */
+    private void produce(DeckRandom random) {
+        int[] indices = new int[cards];
+        while (!closed) {
+            long pos = tail.get();
+            int slot = (int) pos & mask;
+            long delta = sequences.get(slot) - pos;
+            if (delta == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    shuffle(slots[slot], indices, random);
+                    sequences.set(slot, pos + 1);
+                    produced.increment();
+                }
+            } else if (delta < 0) {
+                // full: sleep until a consumer drains the ring
+                sleeping = true;
+                if (sequences.get(slot) - pos < 0) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+            }
+        }
+    }
+
+    /* Fisher-Yates over a whole permutation, which stays uniform when the
+     * array already holds an earlier shuffle */
+    private void shuffle(int[] deck, int[] indices, DeckRandom random) {
+        random.fillIndices(indices, 0, cards, cards - 1, 1);
+        for (int i = 0; i < cards - 1; i++) {
+            int j = i + indices[i];
+            int card = deck[j];
+            deck[j] = deck[i];
+            deck[i] = card;
+        }
+    }
+
+    private void wake() {
+        sleeping = false;
+        for (Thread producer : producers) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Stops the producers; take() returns what is left, then starves.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        wake();
+    }
+
+    @Override
+    public String toString() {
+        long taken = taken();
+        long starved = starved();
+        return "DeckPool[" + cards + " cards, " + level() + "/" + depth() + " ready, " + producers.length
+                + " producers, taken " + taken + ", starved " + starved + " ("
+                + String.format("%.2f", taken + starved == 0 ? 0.0 : 100.0 * starved / (taken + starved))
+                + "%), produced " + produced() + "]";
+    }
+
+    /* Quick test: deal from pooled decks and check every permutation is one
+     * of the full deck and the first card is uniform */
+    public static void main(String args[]) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        try (DeckPool pool = new DeckPool(1, 0, 256, 1, DeckRandom.splittable(7))) {
+            Decks decks = new Decks(1, DeckRandom.splittable(8)).pool(pool);
+            int[] first = new int[Card.CARDS];
+            int[] hand = new int[5];
+            int bad = 0;
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                decks.reset();
+                decks.shuffle();
+                decks.deal(hand, 0, 5);
+                first[hand[0]]++;
+                long seen = 0;
+                for (int card : hand) {
+                    seen |= 1L << card;
+                }
+                if (Long.bitCount(seen) != 5) {
+                    bad++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int count : first) {
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+            }
+            System.out.println(rounds + " deals in " + elapsed / 1000000 + " ms, bad " + bad
+                    + ", first card " + min + ".." + max + " exp " + rounds / Card.CARDS);
+            System.out.println(pool);
+        }
+    }
+}
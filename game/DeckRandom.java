@@ -0,0 +1,121 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * interface DeckRandom is the random number generator behind a Decks.
+ *
+ * A generator belongs to one deck (or one simulation task) and is never
+ * shared between threads; split() hands out independent generators for
+ * parallel work instead. Generators made from the same seed produce the same
+ * numbers, so a deck shuffles the same way every time for a given seed and
+ * sequence of calls.
+ */
+interface DeckRandom {
+
+    /**
+     * Returns a uniform random long.
+     */
+    long nextLong();
+
+    /**
+     * Returns a uniform random int in 0..bound-1.
+     */
+    default int nextInt(int bound) {
+        return bounded((int) (nextLong() >>> 32), bound);
+    }
+
+    /**
+     * Returns a new generator whose numbers are independent of this one's;
+     * this generator moves on as well.
+     */
+    DeckRandom split();
+
+    /**
+     * Fills the Fisher-Yates choices of many shuffles at once: for shuffle s
+     * and card i, into[offset + s * cards + i] is uniform in
+     * 0..deckSize-i-1, the offset from position i of the card to swap in.
+     * Two choices are taken from every nextLong().
+     *
+     * @param deckSize cards in the deck
+     * @param cards    cards dealt per shuffle, at most deckSize
+     * @param shuffles number of shuffles
+     */
+    default void fillIndices(int[] into, int offset, int deckSize, int cards, int shuffles) {
+        long bits = 0;
+        boolean high = false;
+        for (int s = 0, k = offset; s < shuffles; s++) {
+            for (int i = 0; i < cards; i++) {
+                int half;
+                if (high) {
+                    half = (int) (bits >>> 32);
+                } else {
+                    bits = nextLong();
+                    half = (int) bits;
+                }
+                high = !high;
+                into[k++] = bounded(half, deckSize - i);
+            }
+        }
+    }
+
+    /*
+     * Maps 32 random bits to 0..bound-1 by multiplying (Lemire), drawing new
+     * bits in the rare case that would make some values more likely.
+     */
+    private int bounded(int bits, int bound) {
+        long product = (bits & 0xFFFFFFFFL) * bound;
+        int threshold = (int) ((1L << 32) % bound);
+        while (Integer.compareUnsigned((int) product, threshold) < 0) {
+            product = (nextLong() & 0xFFFFFFFFL) * bound;
+        }
+        return (int) (product >>> 32);
+    }
+
+    /* a SplittableRandom generator from a seed */
+    static DeckRandom splittable(long seed) {
+        return of(new SplittableRandom(seed));
+    }
+
+    /* a SplittableRandom generator seeded from the clock and a counter */
+    static DeckRandom splittable() {
+        return of(new SplittableRandom());
+    }
+
+    /* a xoshiro256** generator from a seed */
+    static DeckRandom xoshiro(long seed) {
+        return new Xoshiro256(seed);
+    }
+
+    /* wraps a SplittableRandom, which must not be used elsewhere */
+    static DeckRandom of(SplittableRandom random) {
+        return new Splittable(random);
+    }
+
+    /**
+     * class Splittable: DeckRandom over java.util.SplittableRandom
+     */
+    final class Splittable implements DeckRandom {
+
+        private final SplittableRandom random;
+
+        private Splittable(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public long nextLong() {
+            return random.nextLong();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+
+        @Override
+        public DeckRandom split() {
+            return new Splittable(random.split());
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * class ExactAnalyzer works out the exact outcome of every hold of every
+ * starting hand of a paytable by counting final hands instead of dealing out
+ * the draws.
+ *
+ * For every set S of up to five cards of the deck it first counts the final
+ * hands that contain S, by category, with the sum and the sum of squares of
+ * their payouts. The final hands a hold H draws to, avoiding the discarded
+ * cards R, are then by inclusion-exclusion the sum over the subsets T of R of
+ * (-1)^|T| times the counts of H + T: at most 32 lookups instead of up to
+ * C(47, 5) evaluations. Over the 32 holds of a hand this is one Moebius
+ * transform of the sums of the 32 subsets of the hand.
+ *
+ * The counts of a 5-card set are the evaluation of that final hand; those of
+ * a k-set add up the counts of the (k + 1)-sets that contain it, divided by
+ * 5 - k, the number of ways a final hand containing it is reached. Sets are
+ * stored by their colex rank over card indices, the joker last. The tables
+ * take about 40 MB for a 52-card deck and are built on the common fork-join
+ * pool in well under a second.
+ *
+ * An analyzer is immutable once built and is itself the exact optimal
+ * Strategy of its paytable, for joker games too.
+ */
+final class ExactAnalyzer implements Strategy {
+
+    private static final int CATEGORIES = HandEvaluator.CATEGORIES;
+
+    /* classes solved by one task */
+    private static final int GRAIN = 512;
+
+    /* analyzers of the paytables played most recently, about 40 MB each */
+    private static final BoundedCache<Paytable, ExactAnalyzer> cache = new BoundedCache<>(2);
+
+    private final Paytable paytable;
+    private final int cards;
+
+    /* BINOMIAL[n][k] = C(n, k) for n <= cards, k <= 5 */
+    private final int[][] binomial;
+
+    /* by set size k < 5 and colex rank: counts of the final hands containing
+     * the set, CATEGORIES per set, their payouts and squared payouts */
+    private final int[][] counts = new int[5][];
+    private final long[][] paid = new long[5][];
+    private final long[][] squares = new long[5][];
+
+    /* category and payout of every final hand */
+    private final byte[] category;
+    private final int[] payout;
+
+    /**
+     * Counts the final hands of a paytable's deck on the common fork-join
+     * pool.
+     */
+    ExactAnalyzer(Paytable paytable) {
+        this.paytable = paytable;
+        this.cards = paytable.cards();
+        binomial = new int[cards + 1][6];
+        for (int n = 0; n <= cards; n++) {
+            binomial[n][0] = 1;
+            for (int k = 1; k <= 5 && k <= n; k++) {
+                binomial[n][k] = binomial[n - 1][k - 1] + binomial[n - 1][k];
+            }
+        }
+        category = new byte[binomial[cards][5]];
+        payout = new int[binomial[cards][5]];
+        for (int k = 5; k >= 0; k--) {
+            if (k < 5) {
+                counts[k] = new int[binomial[cards][k] * CATEGORIES];
+                paid[k] = new long[binomial[cards][k]];
+                squares[k] = new long[binomial[cards][k]];
+            }
+            ForkJoinPool.commonPool().invoke(k == 0 ? new Count(0, 0, 1) : new Count(k, k - 1, cards));
+        }
+    }
+
+    /**
+     * Returns the shared analyzer of a paytable, counting its final hands on
+     * first use.
+     */
+    static ExactAnalyzer of(Paytable paytable) {
+        return cache.get(paytable, ExactAnalyzer::new);
+    }
+
+    Paytable paytable() {
+        return paytable;
+    }
+
+    /* card index of a card bit: the joker after the 52 cards */
+    private static int index(long bit) {
+        int b = Long.numberOfTrailingZeros(bit);
+        return bit == Card.bit(Card.JOKER) ? Card.JOKER : b - 3 * (b >>> 4);
+    }
+
+    /**
+     * Returns the expected return per unit bet of each of the 32 holds of a
+     * packed 5-card hand, by hold mask over the hand's cards in ascending
+     * bit order, as HoldSolver.expectedValues() does.
+     */
+    double[] expectedValues(long hand) {
+        Hand h = new Hand();
+        h.deal(hand);
+        double[] ev = new double[HoldSolver.HOLDS];
+        for (int hold = 0; hold < HoldSolver.HOLDS; hold++) {
+            ev[hold] = h.expectedValue(hold);
+        }
+        return ev;
+    }
+
+    /**
+     * Returns the bits of the best hold of a packed 5-card hand; on ties the
+     * lowest hold mask wins, as in HoldSolver.bestHold().
+     */
+    @Override
+    public long heldCards(long hand) {
+        Hand h = new Hand();
+        h.deal(hand);
+        return h.held(h.bestHold());
+    }
+
+    /**
+     * Works out the exact return, final-hand probabilities and variance of
+     * playing the paytable optimally. For a 52-card deck one hand of every
+     * suit-isomorphism class (see HandClasses) is solved and weighted by
+     * the size of its class, and the strategy is a StrategyTable built from
+     * the class holds; joker games solve every starting hand and play this
+     * analyzer as their strategy.
+     */
+    PaytableAnalysis analysis() {
+        if (cards == Card.CARDS) {
+            long[] holds = new long[HandClasses.CLASSES];
+            float[] evs = new float[HandClasses.CLASSES];
+            double[] totals = ForkJoinPool.commonPool().invoke(
+                    new Play(0, HandClasses.CLASSES, null, holds, evs));
+            return analysis(StrategyTable.of(paytable, holds, evs), totals);
+        }
+        return analysis(this, ForkJoinPool.commonPool().invoke(new Play(4, cards, null, null, null)));
+    }
+
+    /**
+     * Works out the exact return, final-hand probabilities and variance of
+     * playing every starting hand with a strategy.
+     */
+    PaytableAnalysis analysis(Strategy strategy) {
+        return analysis(strategy, ForkJoinPool.commonPool().invoke(new Play(4, cards, strategy, null, null)));
+    }
+
+    private PaytableAnalysis analysis(Strategy strategy, double[] totals) {
+        double hands = binomial[cards][5];
+        double[] probabilities = new double[CATEGORIES];
+        for (int c = 0; c < CATEGORIES; c++) {
+            probabilities[c] = totals[c] / hands;
+        }
+        double rtp = totals[CATEGORIES] / hands;
+        double variance = totals[CATEGORIES + 1] / hands - rtp * rtp;
+        return new PaytableAnalysis(paytable, strategy, rtp, variance, probabilities);
+    }
+
+    /**
+     * Solves the canonical hand of every suit-isomorphism class of a 52-card
+     * deck: the cards to keep and their expected return.
+     */
+    void solveClasses(long[] holds, float[] evs) {
+        ForkJoinPool.commonPool().invoke(new Play(0, HandClasses.CLASSES, null, holds, evs));
+    }
+
+    /**
+     * A dealt hand: its cards in ascending bit order and the rank and size
+     * of each of its 32 subsets, with the payout sums of each hold.
+     */
+    private final class Hand {
+
+        final int[] card = new int[5];
+        final long[] bits = new long[5];
+        final int[] rank = new int[HoldSolver.HOLDS];
+        final int[] size = new int[HoldSolver.HOLDS];
+        /* sum of the payouts of the draws of each hold */
+        final long[] total = new long[HoldSolver.HOLDS];
+
+        void deal(long hand) {
+            for (int i = 0; i < 5; i++) {
+                bits[i] = hand & -hand;
+                hand ^= bits[i];
+            }
+            for (int i = 0; i < 5; i++) {
+                card[i] = index(bits[i]);
+            }
+            subsets();
+        }
+
+        void deal(int a, int b, int c, int d, int e) {
+            card[0] = a;
+            card[1] = b;
+            card[2] = c;
+            card[3] = d;
+            card[4] = e;
+            for (int i = 0; i < 5; i++) {
+                bits[i] = Card.bit(card[i]);
+            }
+            subsets();
+        }
+
+        private void subsets() {
+            for (int s = 0; s < HoldSolver.HOLDS; s++) {
+                // the joker bit lies among the clubs but its index is last
+                int r = 0;
+                int k = 0;
+                int joker = -1;
+                for (int i = 0; i < 5; i++) {
+                    if ((s & (1 << i)) != 0) {
+                        if (card[i] == Card.JOKER) {
+                            joker = i;
+                        } else {
+                            r += binomial[card[i]][++k];
+                        }
+                    }
+                }
+                if (joker >= 0) {
+                    r += binomial[Card.JOKER][++k];
+                }
+                rank[s] = r;
+                size[s] = k;
+                total[s] = k == 5 ? payout[r] : paid[k][r];
+            }
+            // Moebius transform over supersets: total[h] becomes the sum over
+            // s containing h of (-1)^|s - h| times the payouts containing s
+            for (int i = 0; i < 5; i++) {
+                for (int s = 0; s < HoldSolver.HOLDS; s++) {
+                    if ((s & (1 << i)) == 0) {
+                        total[s] -= total[s | 1 << i];
+                    }
+                }
+            }
+        }
+
+        /* number of draws of a hold */
+        int draws(int hold) {
+            return binomial[cards - 5][5 - size[hold]];
+        }
+
+        double expectedValue(int hold) {
+            return (double) total[hold] / draws(hold);
+        }
+
+        /* the hold with the highest expected return, the lowest on ties */
+        int bestHold() {
+            int best = 0;
+            double ev = expectedValue(0);
+            for (int hold = 1; hold < HoldSolver.HOLDS; hold++) {
+                double e = expectedValue(hold);
+                if (e > ev) {
+                    best = hold;
+                    ev = e;
+                }
+            }
+            return best;
+        }
+
+        long held(int hold) {
+            long held = 0;
+            for (int i = 0; i < 5; i++) {
+                if ((hold & (1 << i)) != 0) {
+                    held |= bits[i];
+                }
+            }
+            return held;
+        }
+
+        int hold(long held) {
+            int hold = 0;
+            for (int i = 0; i < 5; i++) {
+                if ((held & bits[i]) != 0) {
+                    hold |= 1 << i;
+                }
+            }
+            return hold;
+        }
+
+        /**
+         * Adds weight times the category probabilities, the expected return
+         * and the expected squared return of a hold to totals.
+         */
+        void add(int hold, double weight, double[] totals) {
+            double draws = draws(hold);
+            long[] sums = new long[CATEGORIES + 1];
+            for (int s = hold; s < HoldSolver.HOLDS; s = (s + 1) | hold) {
+                int k = size[s];
+                int sign = ((k - size[hold]) & 1) == 0 ? 1 : -1;
+                if (k == 5) {
+                    sums[category[rank[s]]] += sign;
+                    sums[CATEGORIES] += sign * (long) payout[rank[s]] * payout[rank[s]];
+                } else {
+                    int base = rank[s] * CATEGORIES;
+                    for (int c = 0; c < CATEGORIES; c++) {
+                        sums[c] += sign * counts[k][base + c];
+                    }
+                    sums[CATEGORIES] += sign * squares[k][rank[s]];
+                }
+            }
+            for (int c = 0; c < CATEGORIES; c++) {
+                totals[c] += weight * sums[c] / draws;
+            }
+            totals[CATEGORIES] += weight * total[hold] / draws;
+            totals[CATEGORIES + 1] += weight * sums[CATEGORIES] / draws;
+        }
+    }
+
+    /**
+     * Counts the final hands containing each k-set of cards whose highest
+     * card index lies in [from, to).
+     */
+    private final class Count extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int k;
+        private final int from;
+        private final int to;
+
+        Count(int k, int from, int to) {
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Count(k, from, mid), new Count(k, mid, to));
+                return;
+            }
+            if (k == 0) {
+                sum(new int[0], 0);
+                return;
+            }
+            // the k-sets with highest card from, in colex order
+            int[] set = new int[k];
+            set[k - 1] = from;
+            for (int i = 0; i < k - 1; i++) {
+                set[i] = i;
+            }
+            while (true) {
+                if (k == 5) {
+                    long hand = 0;
+                    for (int card : set) {
+                        hand |= Card.bit(card);
+                    }
+                    int r = rank(set, k);
+                    int c = paytable.evaluate(hand);
+                    category[r] = (byte) c;
+                    payout[r] = paytable.payout(hand, c);
+                } else {
+                    sum(set, rank(set, k));
+                }
+                int i = 0;
+                while (i < k - 1 && set[i] + 1 == set[i + 1]) {
+                    set[i] = i;
+                    i++;
+                }
+                if (i == k - 1) {
+                    return;
+                }
+                set[i]++;
+            }
+        }
+
+        private int rank(int[] set, int k) {
+            int r = 0;
+            for (int i = 0; i < k; i++) {
+                r += binomial[set[i]][i + 1];
+            }
+            return r;
+        }
+
+        /* adds up the counts of the (k + 1)-sets containing a k-set */
+        private void sum(int[] set, int r) {
+            int[] count = new int[CATEGORIES];
+            long paidSum = 0;
+            long squareSum = 0;
+            for (int card = 0, j = 0; card < cards; card++) {
+                if (j < k && set[j] == card) {
+                    j++;
+                    continue;
+                }
+                // rank of the set with card inserted before set[j]
+                int next = 0;
+                for (int i = 0; i < j; i++) {
+                    next += binomial[set[i]][i + 1];
+                }
+                next += binomial[card][j + 1];
+                for (int i = j; i < k; i++) {
+                    next += binomial[set[i]][i + 2];
+                }
+                if (k == 4) {
+                    count[category[next]]++;
+                    paidSum += payout[next];
+                    squareSum += (long) payout[next] * payout[next];
+                } else {
+                    int base = next * CATEGORIES;
+                    for (int c = 0; c < CATEGORIES; c++) {
+                        count[c] += counts[k + 1][base + c];
+                    }
+                    paidSum += paid[k + 1][next];
+                    squareSum += squares[k + 1][next];
+                }
+            }
+            int ways = 5 - k;
+            int base = r * CATEGORIES;
+            for (int c = 0; c < CATEGORIES; c++) {
+                counts[k][base + c] = count[c] / ways;
+            }
+            paid[k][r] = paidSum / ways;
+            squares[k][r] = squareSum / ways;
+        }
+    }
+
+    /**
+     * Plays the starting hands of a range and sums, weighted by number of
+     * hands, the probability of every final category, the expected return
+     * and the expected squared return. Without holds the range is of
+     * highest card indices and covers every starting hand, played with the
+     * strategy or optimally if it is null; with holds it is of class ids,
+     * and the best hold and its expected return are stored by class.
+     */
+    private final class Play extends RecursiveTask<double[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Strategy strategy;
+        private final long[] holds;
+        private final float[] evs;
+
+        Play(int from, int to, Strategy strategy, long[] holds, float[] evs) {
+            this.from = from;
+            this.to = to;
+            this.strategy = strategy;
+            this.holds = holds;
+            this.evs = evs;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > (holds == null ? 1 : GRAIN)) {
+                int mid = (from + to) >>> 1;
+                Play left = new Play(from, mid, strategy, holds, evs);
+                left.fork();
+                double[] totals = new Play(mid, to, strategy, holds, evs).compute();
+                double[] other = left.join();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += other[i];
+                }
+                return totals;
+            }
+
+            double[] totals = new double[CATEGORIES + 2];
+            Hand hand = new Hand();
+            if (holds != null) {
+                for (int id = from; id < to; id++) {
+                    hand.deal(HandClasses.hand(id));
+                    int hold = hand.bestHold();
+                    holds[id] = hand.held(hold);
+                    evs[id] = (float) hand.expectedValue(hold);
+                    hand.add(hold, HandClasses.size(id), totals);
+                }
+                return totals;
+            }
+            int e = from;
+            for (int d = 3; d < e; d++) {
+                for (int c = 2; c < d; c++) {
+                    for (int b = 1; b < c; b++) {
+                        for (int a = 0; a < b; a++) {
+                            hand.deal(a, b, c, d, e);
+                            int hold = strategy == null ? hand.bestHold()
+                                    : hand.hold(strategy.heldCards(hand.held(0x1F)));
+                            hand.add(hold, 1, totals);
+                        }
+                    }
+                }
+            }
+            return totals;
+        }
+    }
+
+    /* Quick test: analyse some paytables exactly and check expected returns
+     * of random hands against HoldSolver */
+    public static void main(String args[]) {
+        for (Paytable paytable : new Paytable[]{Paytable.JACKS_OR_BETTER, Paytable.DEUCES_WILD,
+                Paytable.JOKER_POKER}) {
+            long start = System.nanoTime();
+            ExactAnalyzer analyzer = new ExactAnalyzer(paytable);
+            long counted = System.nanoTime();
+            PaytableAnalysis analysis = analyzer.analysis();
+            System.out.println(analysis);
+            System.out.printf("Counted in %d ms, analysed in %d ms%n",
+                    (counted - start) / 1000000, (System.nanoTime() - counted) / 1000000);
+
+            java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+            double error = 0;
+            for (int i = 0; i < 20; i++) {
+                long hand = 0;
+                while (Long.bitCount(hand) < 5) {
+                    hand |= Card.bit(random.nextInt(paytable.cards()));
+                }
+                long[] cards = new long[5];
+                long rest = hand;
+                for (int j = 0; j < 5; j++) {
+                    cards[j] = rest & -rest;
+                    rest ^= cards[j];
+                }
+                double[] exact = analyzer.expectedValues(hand);
+                double[] solved = HoldSolver.expectedValuesSequential(cards, paytable);
+                for (int hold = 0; hold < HoldSolver.HOLDS; hold++) {
+                    error = Math.max(error, Math.abs(exact[hold] - solved[hold]));
+                }
+            }
+            System.out.println("Largest difference from HoldSolver: " + error);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package game;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * class GameMetrics counts what the sessions of one paytable play: rounds,
+ * hands, wagers, payouts, final hands per category and the latency of the
+ * deal, draw and settle phases.
+ *
+ * Sessions record through a Recorder of their own (see GameSession.metrics)
+ * that keeps plain counters and adds them to the shared striped counters
+ * every FLUSH rounds, on the first round after each second of the clock
+ * below, and when the session stops recording (metrics(null)). A slow or
+ * short session is thus counted within about a second of play, and an
+ * idle one when it plays again or ends. The round that makes FLUSH is
+ * timed, into lock-free histograms: its phases only note System.nanoTime()
+ * at their start and end, and the one call the session makes per round, at
+ * the end of settle(), records them with the counts. All but the counting
+ * is left to the flush, on one branch, so that the phases stay small. The
+ * metrics can be read here, dumped as text or registered as an MXBean.
+ *
+ * Rounds per second are counted over the last WINDOW seconds of a clock
+ * shared by all metrics, which one daemon thread advances every second:
+ * each flush adds its rounds to the bucket of the current second, and
+ * reading the rate only sums the buckets of the seconds before it.
+ *
+ * The theoretical return is the paytable's optimal-strategy analysis
+ * (PaytableAnalysis), computed in the background on first use; it is NaN
+ * until then.
+ */
+final class GameMetrics implements GameMetricsMXBean {
+
+    /* rounds a recorder keeps before adding them to the totals */
+    static final int FLUSH = 256;
+    /* seconds over which getRoundsPerSecond() counts */
+    static final int WINDOW = 10;
+
+    /* a bucket holds its second in the high bits and its rounds below */
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int SECOND_MASK = (1 << (64 - COUNT_BITS)) - 1;
+
+    /* seconds since the clock started */
+    private static volatile int tick;
+    private static final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        clock.scheduleAtFixedRate(() -> tick++, 1, 1, TimeUnit.SECONDS);
+    }
+
+    static final int DEAL = 0;
+    static final int DRAW = 1;
+    static final int SETTLE = 2;
+    /* times a timed round leaves to Recorder.round(): start and end of deal
+     * and draw, start of settle */
+    static final int STAMPS = 5;
+    private static final String[] phaseNames = {"deal", "draw", "settle"};
+    private static final double[] percentiles = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] percentileNames = {"p50", "p90", "p99", "p99.9"};
+
+    private final Paytable paytable;
+    private final long started = System.nanoTime();
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder hands = new LongAdder();
+    private final LongAdder wagered = new LongAdder();
+    private final LongAdder paid = new LongAdder();
+    private final LongAdder[] categoryHits = new LongAdder[HandEvaluator.CATEGORIES];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[phaseNames.length];
+
+    /* guarded by this */
+    private CompletableFuture<Double> analysis;
+
+    /* rounds flushed by second, the current one and the WINDOW before */
+    private final AtomicLongArray buckets = new AtomicLongArray(WINDOW + 1);
+    private final int startTick = tick;
+
+    private ObjectName name;
+
+    GameMetrics(Paytable paytable) {
+        this.paytable = paytable;
+        for (int c = 0; c < categoryHits.length; c++) {
+            categoryHits[c] = new LongAdder();
+        }
+        for (int p = 0; p < latencies.length; p++) {
+            latencies[p] = new LatencyHistogram();
+        }
+    }
+
+    Paytable paytable() {
+        return paytable;
+    }
+
+    /* a recorder for one session; not thread-safe */
+    Recorder recorder() {
+        return new Recorder();
+    }
+
+    /* sampled latencies of a phase */
+    LatencyHistogram latency(int phase) {
+        return latencies[phase];
+    }
+
+    long wagered() {
+        return wagered.sum();
+    }
+
+    long paid() {
+        return paid.sum();
+    }
+
+    long hits(int category) {
+        return categoryHits[category].sum();
+    }
+
+    @Override
+    public String getPaytable() {
+        return paytable.name();
+    }
+
+    @Override
+    public long getRounds() {
+        return rounds.sum();
+    }
+
+    @Override
+    public long getHands() {
+        return hands.sum();
+    }
+
+    @Override
+    public double getRoundsPerSecond() {
+        int now = tick;
+        int seconds = Math.min(WINDOW, now - startTick);
+        if (seconds == 0) {
+            long nanos = System.nanoTime() - started;
+            return nanos == 0 ? 0 : rounds.sum() * 1e9 / nanos;
+        }
+        long counted = 0;
+        for (int t = now - seconds; t < now; t++) {
+            long bucket = buckets.get(t % buckets.length());
+            if ((bucket >>> COUNT_BITS) == (t & SECOND_MASK)) {
+                counted += bucket & COUNT_MASK;
+            }
+        }
+        return (double) counted / seconds;
+    }
+
+    /* adds flushed rounds to the bucket of the current second */
+    private void count(long flushed) {
+        int now = tick;
+        int i = now % buckets.length();
+        long second = (long) (now & SECOND_MASK) << COUNT_BITS;
+        long bucket;
+        do {
+            bucket = buckets.get(i);
+        } while (!buckets.compareAndSet(i, bucket,
+                (bucket & ~COUNT_MASK) == second ? bucket + flushed : second | flushed));
+    }
+
+    @Override
+    public double getRtp() {
+        long wagered = wagered();
+        return wagered == 0 ? Double.NaN : (double) paid() / wagered;
+    }
+
+    @Override
+    public double getTheoreticalRtp() {
+        return theoreticalRtp().getNow(Double.NaN);
+    }
+
+    /* the return of the paytable's optimal strategy, analysed once in the
+     * background; NaN if the analysis failed */
+    synchronized CompletableFuture<Double> theoreticalRtp() {
+        if (analysis == null) {
+            analysis = CompletableFuture.supplyAsync(() -> PaytableAnalysis.of(paytable).rtp())
+                    .exceptionally(e -> Double.NaN);
+        }
+        return analysis;
+    }
+
+    @Override
+    public Map<String, Long> getCategoryHits() {
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (int category : paytable.ranking()) {
+            hits.put(paytable.name(category), hits(category));
+        }
+        return hits;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyNanos() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (int p = 0; p < latencies.length; p++) {
+            for (int q = 0; q < percentiles.length; q++) {
+                nanos.put(phaseNames[p] + "." + percentileNames[q], latencies[p].percentile(percentiles[q]));
+            }
+            nanos.put(phaseNames[p] + ".max", latencies[p].max());
+        }
+        return nanos;
+    }
+
+    @Override
+    public String dump() {
+        long rounds = getRounds();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        StringBuilder s = new StringBuilder();
+        s.append(paytable.name()).append('\n');
+        s.append(String.format("rounds %d, hands %d, %.0f rounds/s since start, %.0f in the last %d s%n",
+                rounds, getHands(), seconds > 0 ? rounds / seconds : 0.0, getRoundsPerSecond(),
+                Math.max(1, Math.min(WINDOW, tick - startTick))));
+        s.append(String.format("wagered %d, paid %d, RTP %.4f, theoretical %.4f%n", wagered(), paid(),
+                getRtp(), getTheoreticalRtp()));
+        for (Map.Entry<String, Long> hit : getCategoryHits().entrySet()) {
+            s.append(String.format("%-16s\t|\t%d%n", hit.getKey(), hit.getValue()));
+        }
+        for (int p = 0; p < latencies.length; p++) {
+            s.append(String.format("%-6s ns (%d sampled):", phaseNames[p], latencies[p].count()));
+            for (int q = 0; q < percentiles.length; q++) {
+                s.append(' ').append(percentileNames[q]).append(' ')
+                        .append(latencies[p].percentile(percentiles[q]));
+            }
+            s.append(" max ").append(latencies[p].max()).append('\n');
+        }
+        return s.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * game:type=GameMetrics,name=<name>.
+     */
+    synchronized ObjectName register(String name) throws JMException {
+        ObjectName objectName = ObjectName.getInstance("game:type=GameMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     */
+    synchronized void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    /**
+     * class Recorder: the counters of one session, added to the totals every
+     * FLUSH rounds
+     */
+    final class Recorder {
+
+        private int pending;
+        private long wagered;
+        private long paid;
+        private final long[] categoryHits = new long[HandEvaluator.CATEGORIES];
+        /* second of the clock of the last flush */
+        private int flushed = tick;
+
+        private Recorder() {
+        }
+
+        /* final hands by category, which settle() counts as it evaluates
+         * them */
+        long[] hits() {
+            return categoryHits;
+        }
+
+        /**
+         * Counts a settled round, at the end of its settle(), which has
+         * counted its hands into hits().
+         *
+         * @param bet        bet per hand
+         * @param payout     total paid for the round
+         * @param stamps     System.nanoTime() of the round's phases (see
+         *                   STAMPS) if it was timed, else null
+         * @return true if the next round is to be timed, the one that
+         *         makes FLUSH rounds
+         */
+        boolean round(int numberHands, int bet, int payout, long[] stamps) {
+            wagered += (long) bet * numberHands;
+            paid += payout;
+            if (++pending == FLUSH || stamps != null || tick != flushed) {
+                flush(stamps);
+                return false;
+            }
+            return pending == FLUSH - 1;
+        }
+
+        /* flushes the counts, with the latencies of the round if timed */
+        private void flush(long[] stamps) {
+            if (stamps != null) {
+                long end = System.nanoTime();
+                latencies[DEAL].record(stamps[1] - stamps[0]);
+                latencies[DRAW].record(stamps[3] - stamps[2]);
+                latencies[SETTLE].record(end - stamps[4]);
+            }
+            flush();
+        }
+
+        /**
+         * Adds the counts since the last flush to the totals.
+         */
+        void flush() {
+            flushed = tick;
+            if (pending == 0) {
+                return;
+            }
+            GameMetrics metrics = GameMetrics.this;
+            metrics.rounds.add(pending);
+            metrics.count(pending);
+            metrics.wagered.add(wagered);
+            metrics.paid.add(paid);
+            long hands = 0;
+            for (int c = 0; c < categoryHits.length; c++) {
+                if (categoryHits[c] != 0) {
+                    hands += categoryHits[c];
+                    metrics.categoryHits[c].add(categoryHits[c]);
+                    categoryHits[c] = 0;
+                }
+            }
+            metrics.hands.add(hands);
+            pending = 0;
+            wagered = 0;
+            paid = 0;
+        }
+    }
+
+    /* Quick test: play sessions on a few threads and dump the metrics, then
+     * check that sessions shorter than FLUSH are counted */
+    public static void main(String args[]) throws Exception {
+        int roundsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threads = 2;
+        GameMetrics metrics = new GameMetrics(Paytable.JACKS_OR_BETTER);
+        metrics.register("quick-test");
+        metrics.theoreticalRtp();
+        Thread[] players = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            players[t] = new Thread(() -> {
+                GameSession session = new GameSession(Integer.MAX_VALUE / 2, Paytable.JACKS_OR_BETTER)
+                        .metrics(metrics);
+                play(session, roundsPerThread);
+                session.metrics(null);
+            });
+            players[t].start();
+        }
+        for (Thread player : players) {
+            player.join();
+        }
+        metrics.theoreticalRtp().join();
+        System.out.print(metrics.dump());
+        System.out.println("JMX rounds: " + ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("game:type=GameMetrics,name=\"quick-test\""), "Rounds"));
+        metrics.unregister();
+
+        // one session ends after a few rounds; another plays a few, pauses
+        // past a second of the clock and plays one more
+        GameMetrics shortSessions = new GameMetrics(Paytable.JACKS_OR_BETTER);
+        GameSession ended = new GameSession(1000, Paytable.JACKS_OR_BETTER).metrics(shortSessions);
+        play(ended, 10);
+        ended.metrics(null);
+        long afterEnd = shortSessions.getRounds();
+        GameSession paused = new GameSession(1000, Paytable.JACKS_OR_BETTER).metrics(shortSessions);
+        play(paused, 10);
+        Thread.sleep(1500);
+        play(paused, 1);
+        long afterPause = shortSessions.getRounds();
+        System.out.println("short sessions: " + afterEnd + " rounds counted after the end, expected 10; "
+                + afterPause + " after the pause, expected 21");
+    }
+
+    private static void play(GameSession session, int rounds) {
+        for (int r = 0; r < rounds; r++) {
+            session.bet(1);
+            GameSession.Round dealt = session.deal();
+            long held = Strategy.KEEP_PAYING.heldCards(dealt.hand());
+            int holdMask = 0;
+            for (int i = 0; i < 5; i++) {
+                if ((held & Card.bit(dealt.card(i))) != 0) {
+                    holdMask |= 1 << i;
+                }
+            }
+            session.draw(holdMask);
+            session.settle();
+        }
+    }
+}
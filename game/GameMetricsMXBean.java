@@ -0,0 +1,35 @@
+package game;
+
+import java.util.Map;
+
+/**
+ * interface GameMetricsMXBean is the JMX view of a GameMetrics.
+ */
+public interface GameMetricsMXBean {
+
+    /* name of the paytable the metrics are for */
+    String getPaytable();
+
+    long getRounds();
+
+    long getHands();
+
+    /* rounds per second over the last GameMetrics.WINDOW seconds, or since
+     * the start before the first second */
+    double getRoundsPerSecond();
+
+    /* paid / wagered so far */
+    double getRtp();
+
+    /* return of the paytable's optimal strategy, NaN until known */
+    double getTheoreticalRtp();
+
+    /* final hands per category name */
+    Map<String, Long> getCategoryHits();
+
+    /* sampled phase latencies in nanoseconds, keyed "deal.p50", ... */
+    Map<String, Long> getLatencyNanos();
+
+    /* the text dump */
+    String dump();
+}
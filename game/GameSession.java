@@ -0,0 +1,665 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * class GameSession runs rounds of video poker for one player without any
+ * console I/O.
+ *
+ * A round is bet() -> deal() -> draw(holdMask) -> settle(); each step returns
+ * an immutable Round describing the state after it. Calling a step out of
+ * order throws IllegalStateException.
+ *
+ * In multi-hand mode (Triple Play, Ten Play, ...) the bet is per hand, the
+ * held cards are copied to every hand and each of the other hands draws its
+ * replacements from its own copy of the remaining deck. All final hands are
+ * evaluated and paid together in settle().
+ *
+ * A session with GameMetrics counts its settled rounds and times the deal,
+ * draw and settle phases of sampled rounds. A session in SessionSnapshots
+ * publishes its balance and round after every step, to be saved to disk.
+ * A session with a Jackpot adds to it on every bet and wins it, instead of
+ * the paytable's payout, with every natural Royal Flush.
+ */
+class GameSession {
+
+    /* round phases */
+    static final int IDLE = 0;   /* no round in progress, waiting for a bet */
+    static final int BET = 1;    /* bet taken from balance */
+    static final int DEALT = 2;  /* five cards dealt */
+    static final int DRAWN = 3;  /* unheld cards replaced, waiting for settle */
+
+    private static final int numberOfCards = 5;
+
+    private final Decks deck;
+    private final Paytable paytable;
+    private final int numberHands;
+
+    private int phase = IDLE;
+    private int balance;
+    private int bet;
+    private final int[] cards = new int[numberOfCards]; /* card indices */
+    private int packed;                                 /* cards, HandJournal.pack() */
+    private int holdMask;
+
+    /* multi-hand buffers: replacements of hands 1..n-1, final hands, their
+     * cards (HandJournal.pack()) and categories; hand 0 is the one in
+     * cards[] */
+    private final int[] extraReplacements;
+    private final long[] finals;
+    private final int[] finalCards;
+    private final byte[] categories;
+
+    /* seed the other hands drew their replacements from, saved with the
+     * round so that restore() deals them again */
+    private long drawSeed;
+
+    /* hand history, or null; the deal and every hand's payout */
+    private HandJournal journal;
+    private long journalId;
+    private int dealt;
+    private int[] payouts;
+
+    /* counters of this session's rounds, or null; while the metrics sample
+     * the round, timed is set and the phases leave their start and end
+     * times in stamps, for the metrics to read once the round is settled */
+    private GameMetrics.Recorder metrics;
+    private boolean timed;
+    private long[] stamps;
+
+    /* state saved by SessionSnapshots, or null */
+    private SessionSnapshots.State snapshot;
+
+    /* progressive jackpot, or null; by hand, credits won by the round being
+     * settled, -1 if not claimed, so that a settle() retried after a failure
+     * does not claim again */
+    private Jackpot jackpot;
+    private long[] jackpotWins;
+
+    /**
+     * Creates a session.
+     *
+     * @param balance starting balance
+     * @param deck     deck used only by this session, with the game's jokers
+     * @param paytable payouts of the final hands
+     */
+    GameSession(int balance, Decks deck, Paytable paytable) {
+        this(balance, deck, paytable, 1);
+    }
+
+    /**
+     * Creates a multi-hand session.
+     *
+     * @param numberHands hands played per round, 1 or more
+     */
+    GameSession(int balance, Decks deck, Paytable paytable, int numberHands) {
+        if (numberHands < 1) {
+            throw new IllegalArgumentException("Invalid number of hands:" + numberHands);
+        }
+        this.balance = balance;
+        this.deck = deck;
+        this.paytable = paytable;
+        this.numberHands = numberHands;
+        this.extraReplacements = new int[(numberHands - 1) * numberOfCards];
+        this.finals = new long[numberHands];
+        this.finalCards = new int[numberHands];
+        this.categories = new byte[numberHands];
+    }
+
+    /**
+     * Creates a session with its own deck, with a joker if the game has one.
+     */
+    GameSession(int balance, Paytable paytable) {
+        this(balance, paytable, 1);
+    }
+
+    /**
+     * Creates a multi-hand session with its own deck.
+     */
+    GameSession(int balance, Paytable paytable, int numberHands) {
+        this(balance, paytable, numberHands, DeckRandom.splittable());
+    }
+
+    /**
+     * Creates a multi-hand session with its own deck, shuffled by a generator
+     * of its own; a seeded generator makes the session's deals repeatable.
+     */
+    GameSession(int balance, Paytable paytable, int numberHands, DeckRandom random) {
+        this(balance, new Decks(1, paytable.jokers(), random), paytable, numberHands);
+    }
+
+    Paytable paytable() {
+        return paytable;
+    }
+
+    /* hands played per round */
+    int numberHands() {
+        return numberHands;
+    }
+
+    /**
+     * Records every settled round of this session in a journal.
+     *
+     * @param id session id written with the rounds
+     * @return this session
+     */
+    GameSession journal(HandJournal journal, long id) {
+        this.journal = journal;
+        this.journalId = id;
+        this.payouts = new int[numberHands];
+        return this;
+    }
+
+    /**
+     * Counts this session's rounds in metrics of its paytable; null stops
+     * counting, after adding what was not counted yet.
+     *
+     * @return this session
+     */
+    GameSession metrics(GameMetrics metrics) {
+        if (metrics != null && !metrics.paytable().equals(paytable)) {
+            throw new IllegalArgumentException("Metrics of " + metrics.paytable().name() + " for a session of "
+                    + paytable.name());
+        }
+        if (this.metrics != null) {
+            this.metrics.flush();
+        }
+        this.metrics = metrics == null ? null : metrics.recorder();
+        this.timed = metrics != null && phase == IDLE;
+        if (metrics != null && stamps == null) {
+            stamps = new long[GameMetrics.STAMPS];
+        }
+        return this;
+    }
+
+    /**
+     * Publishes this session's state to snapshots after every step; null
+     * stops publishing.
+     *
+     * @return this session
+     */
+    GameSession snapshot(SessionSnapshots.State state) {
+        this.snapshot = state;
+        if (state != null) {
+            publish();
+        }
+        return this;
+    }
+
+    /**
+     * Plays for a progressive jackpot shared with other sessions; null stops
+     * playing for it.
+     *
+     * @return this session
+     */
+    GameSession jackpot(Jackpot jackpot) {
+        if (this.jackpot != null && jackpot != this.jackpot) {
+            release();
+        }
+        this.jackpot = jackpot;
+        if (jackpot != null && jackpotWins == null) {
+            jackpotWins = new long[numberHands];
+            Arrays.fill(jackpotWins, -1);
+        }
+        return this;
+    }
+
+    /**
+     * Continues a round saved by SessionSnapshots in this new session, whose
+     * balance is the saved one. A round saved after deal() keeps its cards
+     * and draws from a deck without them. A round saved after draw() keeps
+     * its final hands: hand 0 as saved, the other hands dealt again from the
+     * same remaining cards and seed, so they are the hands the player saw.
+     *
+     * @param phase    saved phase
+     * @param dealt    cards dealt, HandJournal.pack() packing
+     * @param finished hand 0 after draw(), same packing
+     * @param seed     seed of the other hands' draw (multi-hand only)
+     */
+    void restore(int phase, int bet, int dealt, int finished, int holdMask, long seed) {
+        expect(IDLE);
+        if (phase < IDLE || phase > DRAWN) {
+            throw new IllegalArgumentException("Invalid phase:" + phase);
+        }
+        if (phase == IDLE) {
+            return;
+        }
+        // the phases before were not timed
+        timed = false;
+        this.bet = bet;
+        this.holdMask = 0;
+        this.phase = phase;
+        if (phase == BET) {
+            return;
+        }
+        this.dealt = dealt;
+        this.packed = dealt;
+        for (int i = 0; i < numberOfCards; i++) {
+            cards[i] = (dealt >>> (6 * i)) & 0x3F;
+        }
+        deck.redeal(cards, numberOfCards);
+        if (phase == DRAWN) {
+            this.holdMask = holdMask & 0x1F;
+            if (numberHands > 1) {
+                drawSeed = seed;
+                drawOthers(held(), numberOfCards - Integer.bitCount(this.holdMask));
+            }
+            for (int i = 0; i < numberOfCards; i++) {
+                cards[i] = (finished >>> (6 * i)) & 0x3F;
+            }
+            packed = finished;
+            finals[0] = hand();
+        }
+        if (snapshot != null) {
+            publish();
+        }
+    }
+
+    int balance() {
+        return balance;
+    }
+
+    int phase() {
+        return phase;
+    }
+
+    /**
+     * Takes a bet on every hand from the balance.
+     *
+     * @param amount bet per hand
+     * @throws IllegalArgumentException if amount * hands is not in 1..balance
+     */
+    Round bet(int amount) {
+        expect(IDLE);
+        if (amount <= 0 || (long) amount * numberHands > balance) {
+            throw new IllegalArgumentException("Invalid bet:" + amount);
+        }
+        bet = amount;
+        balance -= amount * numberHands;
+        holdMask = 0;
+        phase = BET;
+        if (jackpot != null) {
+            jackpot.contribute((long) amount * numberHands);
+        }
+        if (snapshot != null) {
+            publish();
+        }
+        return new Round(this, -1, 0, -1, 0);
+    }
+
+    /**
+     * Resets and shuffles the deck and deals five cards.
+     */
+    Round deal() {
+        expect(BET);
+        if (timed) {
+            stamps[0] = System.nanoTime();
+        }
+        deck.reset();
+        deck.shuffle();
+        take(cards, numberOfCards);
+        dealt = HandJournal.pack(cards);
+        packed = dealt;
+        phase = DEALT;
+        if (snapshot != null) {
+            publish();
+        }
+        if (timed) {
+            stamps[1] = System.nanoTime();
+        }
+        return new Round(this, packed, hand(), -1, 0);
+    }
+
+    /**
+     * Replaces the cards that are not held. Held cards keep their positions.
+     *
+     * @param holdMask bit i set keeps card i (0-4)
+     */
+    Round draw(int holdMask) {
+        expect(DEALT);
+        if (timed) {
+            stamps[2] = System.nanoTime();
+        }
+        this.holdMask = holdMask & 0x1F;
+        int draw = numberOfCards - Integer.bitCount(this.holdMask);
+
+        // the other hands first, while the deck still holds hand 0's draw
+        if (numberHands > 1) {
+            drawSeed = deck.seed();
+            drawOthers(held(), draw);
+        }
+
+        try {
+            for (int i = 0; i < numberOfCards; i++) {
+                if ((this.holdMask & (1 << i)) == 0) {
+                    cards[i] = deck.dealCard();
+                }
+            }
+        } catch (PlayingCardException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        long hand = 0;
+        int packed = 0;
+        for (int i = numberOfCards - 1; i >= 0; i--) {
+            hand |= Card.bit(cards[i]);
+            packed = (packed << 6) | cards[i];
+        }
+        finals[0] = hand;
+        this.packed = packed;
+        phase = DRAWN;
+        if (snapshot != null) {
+            publish();
+        }
+        if (timed) {
+            stamps[3] = System.nanoTime();
+        }
+        return new Round(this, packed, hand, -1, 0);
+    }
+
+    /**
+     * Evaluates the final hands and pays them. With a journal, the round is
+     * recorded before the balance changes.
+     *
+     * @throws UncheckedIOException if the journal cannot record the round;
+     *                              the round stays unsettled and, until
+     *                              abandon(), a jackpot it claimed stays
+     *                              claimed for it
+     * @throws ArithmeticException  if the payout would not fit in the
+     *                              balance; the round stays unsettled and
+     *                              claims no jackpot
+     */
+    Round settle() {
+        expect(DRAWN);
+        if (timed) {
+            stamps[4] = System.nanoTime();
+        }
+        long paid = 0;
+        boolean royal = false;
+        long[] hits = metrics != null ? metrics.hits() : null;
+        for (int h = 0; h < numberHands; h++) {
+            int category = paytable.evaluate(finals[h]);
+            categories[h] = (byte) category;
+            if (hits != null) {
+                hits[category]++;
+            }
+            if (jackpot != null && category == HandEvaluator.ROYAL_FLUSH) {
+                royal = true;
+                continue;
+            }
+            int handPaid = paytable.payout(finals[h], category);
+            paid += handPaid;
+            if (journal != null) {
+                payouts[h] = bet * handPaid;
+            }
+        }
+        long room = Integer.MAX_VALUE - (long) balance - bet * paid;
+        long won = royal ? claim(room) : 0;
+        if (won > room) {
+            uncount();
+            throw new ArithmeticException("Payout of " + (bet * paid) + " credits and jackpots of " + won
+                    + " overflows a balance of " + balance);
+        }
+        int payout = (int) (bet * paid + won);
+        int after = balance + payout;
+        if (journal != null) {
+            record(after);
+        }
+        balance = after;
+        phase = IDLE;
+        if (royal) {
+            Arrays.fill(jackpotWins, -1);
+        }
+        if (snapshot != null) {
+            publish();
+        }
+        if (metrics != null) {
+            timed = metrics.round(numberHands, bet, payout, timed ? stamps : null);
+        }
+        return new Round(this, packed, finals[0], categories[0], payout);
+    }
+
+    /*
+     * Wins the jackpot with every Royal Flush of the round, once per round,
+     * and returns the credits won. If the jackpots at their value() now do
+     * not fit in room, nothing is claimed and their value is returned; if
+     * the pool grew past room before the claims, they are put back.
+     */
+    private long claim(long room) {
+        long won = 0;
+        int unclaimed = 0;
+        for (int h = 0; h < numberHands; h++) {
+            if (categories[h] == HandEvaluator.ROYAL_FLUSH) {
+                if (jackpotWins[h] < 0) {
+                    unclaimed++;
+                } else {
+                    won += jackpotWins[h];
+                }
+            }
+        }
+        if (unclaimed > 0) {
+            long bound = won + unclaimed * jackpot.value();
+            if (bound > room) {
+                return bound;
+            }
+        }
+        for (int h = 0; h < numberHands; h++) {
+            if (categories[h] == HandEvaluator.ROYAL_FLUSH && jackpotWins[h] < 0) {
+                jackpotWins[h] = jackpot.claim();
+                won += jackpotWins[h];
+            }
+            if (journal != null && categories[h] == HandEvaluator.ROYAL_FLUSH) {
+                payouts[h] = (int) jackpotWins[h];
+            }
+        }
+        if (won > room) {
+            release();
+        }
+        return won;
+    }
+
+    /**
+     * Gives up the round in progress for good, e.g. when its table closes: a
+     * jackpot claimed by a settle() that failed goes back to the pool.
+     */
+    void abandon() {
+        release();
+    }
+
+    /* puts the jackpots claimed for the round back into the pool */
+    private void release() {
+        if (jackpotWins == null) {
+            return;
+        }
+        for (int h = 0; h < numberHands; h++) {
+            if (jackpotWins[h] >= 0) {
+                jackpot.release(jackpotWins[h]);
+                jackpotWins[h] = -1;
+            }
+        }
+    }
+
+    /* appends the round to the journal */
+    private void record(int balance) {
+        finalCards[0] = packed;
+        try {
+            journal.append(journalId, paytable, dealt, holdMask, bet, balance,
+                    numberHands, finalCards, categories, payouts, jackpot != null ? jackpotWins : null);
+        } catch (IOException e) {
+            uncount();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* takes back the hands of a round left unsettled from the metrics */
+    private void uncount() {
+        for (int h = 0; metrics != null && h < numberHands; h++) {
+            metrics.hits()[categories[h]]--;
+        }
+    }
+
+    /* hands the current state to the snapshots */
+    private void publish() {
+        snapshot.write(phase, balance, bet, dealt, packed, holdMask, drawSeed);
+    }
+
+    /* draws the final hands 1..n-1 from copies of the deck, with drawSeed */
+    private void drawOthers(long held, int draw) {
+        try {
+            deck.dealCopies(extraReplacements, draw, numberHands - 1, drawSeed);
+        } catch (PlayingCardException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        for (int h = 1, next = 0; h < numberHands; h++) {
+            long hand = held;
+            int packed = 0;
+            for (int i = numberOfCards - 1, last = next + draw - 1; i >= 0; i--) {
+                int card = (holdMask & (1 << i)) != 0 ? cards[i] : extraReplacements[last--];
+                hand |= Card.bit(card);
+                packed = (packed << 6) | card;
+            }
+            next += draw;
+            finals[h] = hand;
+            finalCards[h] = packed;
+        }
+    }
+
+    /* packed bits of the held cards */
+    private long held() {
+        long held = 0;
+        for (int i = 0; i < numberOfCards; i++) {
+            if ((holdMask & (1 << i)) != 0) {
+                held |= Card.bit(cards[i]);
+            }
+        }
+        return held;
+    }
+
+    /* packed bits of the current cards */
+    private long hand() {
+        long hand = 0;
+        for (int card : cards) {
+            hand |= Card.bit(card);
+        }
+        return hand;
+    }
+
+    private void take(int[] into, int numberCards) {
+        try {
+            deck.deal(into, 0, numberCards);
+        } catch (PlayingCardException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    private void expect(int expected) {
+        if (phase != expected) {
+            throw new IllegalStateException("Round is in phase " + phase + ", expected " + expected);
+        }
+    }
+
+    /**
+     * class Round (immutable): state of a session after one step of a round
+     */
+    static final class Round {
+
+        private final int phase;
+        private final int balance;
+        private final int bet;
+        private final int cards; /* 6 bits per card index, card 0 lowest */
+        private final long hand;
+        private final int holdMask;
+        private final int category;
+        private final int payout;
+        private final long[] hands;      /* final hands, multi-hand after draw() */
+        private final byte[] categories; /* their categories, after settle() */
+
+        /* cards and hand are the session's cards, -1 and 0 before deal() */
+        private Round(GameSession session, int cards, long hand, int category, int payout) {
+            this.phase = session.phase;
+            this.balance = session.balance;
+            this.bet = session.bet;
+            this.cards = cards;
+            this.hand = hand;
+            this.holdMask = session.holdMask;
+            this.category = category;
+            this.payout = payout;
+            boolean drawn = session.phase == DRAWN || category >= 0;
+            this.hands = session.numberHands > 1 && drawn ? session.finals.clone() : null;
+            this.categories = session.numberHands > 1 && category >= 0 ? session.categories.clone() : null;
+        }
+
+        /* phase the session is in after this step */
+        int phase() {
+            return phase;
+        }
+
+        int balance() {
+            return balance;
+        }
+
+        int bet() {
+            return bet;
+        }
+
+        /* index of card i (0-4) in hand order, -1 before deal() */
+        int card(int i) {
+            return cards < 0 ? -1 : (cards >>> (6 * i)) & 0x3F;
+        }
+
+        /* cards in hand order, empty before deal() */
+        List<Card> cards() {
+            return new AbstractList<Card>() {
+                @Override
+                public Card get(int i) {
+                    if (i < 0 || i >= size()) {
+                        throw new IndexOutOfBoundsException("Index: " + i);
+                    }
+                    return Card.get(card(i));
+                }
+
+                @Override
+                public int size() {
+                    return cards < 0 ? 0 : numberOfCards;
+                }
+            };
+        }
+
+        /* packed bits of cards() */
+        long hand() {
+            return hand;
+        }
+
+        int holdMask() {
+            return holdMask;
+        }
+
+        /* HandEvaluator category of the final hand, -1 before settle() */
+        int category() {
+            return category;
+        }
+
+        /* amount won on all hands, 0 before settle() */
+        int payout() {
+            return payout;
+        }
+
+        /* number of final hands: 1, or the session's hands after draw() */
+        int hands() {
+            return hands == null ? 1 : hands.length;
+        }
+
+        /* packed bits of final hand i; hand 0 is the one of cards() */
+        long hand(int i) {
+            return hands == null ? hand : hands[i];
+        }
+
+        /* HandEvaluator category of final hand i, -1 before settle() */
+        int category(int i) {
+            return categories == null ? category : categories[i];
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package game;
+
+/**
+ * class HandClasses maps 5-card hands to their suit-isomorphism classes:
+ * hands that differ only by a renaming of the suits, like A-K of clubs with
+ * 2-3-4 of hearts and A-K of spades with 2-3-4 of diamonds, have the same
+ * value, the same best holds and the same odds in every game without wild
+ * suits. The 2,598,960 hands of a 52-card deck fall into 134,459 classes.
+ *
+ * The canonical hand of a class has its suit lanes (see HandEvaluator)
+ * sorted by number of cards, then by rank mask, the largest in clubs. code()
+ * gives the class id, 0 to CLASSES - 1, and which suit renaming turns the
+ * hand into the canonical one; canonical() and original() apply that
+ * renaming to any set of cards, e.g. to bring the best hold of the canonical
+ * hand back to the player's suits. ClassCache keeps one result per class id.
+ *
+ * code() needs no large table: the sorted lanes are ranked by their shape
+ * (5, 4+1, 3+2, 3+1+1, 2+2+1 or 2+1+1+1 cards) and by the position of each
+ * rank mask among the masks of as many ranks, lanes of equal size counted as
+ * a multiset. One lookup per lane gives its sort key, size and position at
+ * once, and the class id is a sum of one term per sorted lane, each looked
+ * up by shape and position: a few loads and compare-exchanges, from tables
+ * of about 50 KB. The canonical hand and size of every class are listed on
+ * first use.
+ */
+final class HandClasses {
+
+    /* number of suit-isomorphism classes of 5-card hands */
+    static final int CLASSES = 134459;
+
+    /* number of rank masks of k ranks, C(13, k) */
+    private static final int[] MASKS = {1, 13, 78, 286, 715, 1287};
+
+    /* id within each shape: the lane positions r0-r3 in a mixed radix,
+     * lanes of equal size as a multiset, e.g. for 2+2+1
+     * (pairs(r0) + r1) * 13 + r2; as a sum of one term per lane, from the
+     * tables below by shape and position, with r3 as it is; the term of r0
+     * includes the first id of the shape */
+    private static final int[] TERM0 = new int[6 * 1287];
+    private static final int[] TERM1 = new int[6 * 78];
+    private static final int[] TERM2 = new int[6 * 13];
+
+    /* shape of the two largest sorted lane sizes, n0 * 6 + n1 */
+    private static final byte[] SHAPE = new byte[6 * 6];
+
+    /* sort key of a lane by its rank mask: size << 11 | position of the
+     * mask among the masks of as many ranks, in numeric order; it sorts
+     * like size << 13 | mask */
+    private static final short[] LANE = new short[1 << 13];
+
+    /* suit renamings: canonical lane j is lane SUITS[p][j] of the hand */
+    private static final int[][] SUITS = new int[24][4];
+
+    /* renaming p of the sorted lane order, by suits[0] * 64 + ... + suits[3] */
+    private static final byte[] RENAMING = new byte[256];
+
+    static {
+        int p = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    int d = 6 - a - b - c;
+                    if (a != b && a != c && b != c && d != a && d != b && d != c) {
+                        SUITS[p] = new int[]{a, b, c, d};
+                        RENAMING[a * 64 + b * 16 + c * 4 + d] = (byte) p;
+                        p++;
+                    }
+                }
+            }
+        }
+        int[] next = new int[14];
+        for (int mask = 0; mask < LANE.length; mask++) {
+            int size = Integer.bitCount(mask);
+            LANE[mask] = (short) (size << 11 | next[size]++);
+        }
+        int[][] shapes = {{5, 0, 0, 0}, {4, 1, 0, 0}, {3, 2, 0, 0}, {3, 1, 1, 0}, {2, 2, 1, 0}, {2, 1, 1, 1}};
+        int[] sizes = {MASKS[5], MASKS[4] * 13, MASKS[3] * MASKS[2], MASKS[3] * pairs(13),
+            pairs(MASKS[2]) * 13, MASKS[2] * triples(13)};
+        for (int shape = 0, base = 0; shape < shapes.length; shape++) {
+            int[] n = shapes[shape];
+            SHAPE[n[0] * 6 + n[1]] = (byte) shape;
+            for (int r = 0; r < MASKS[n[0]]; r++) {
+                TERM0[shape * 1287 + r] = base + (shape == 4 ? pairs(r) * 13
+                        : r * (sizes[shape] / MASKS[n[0]]));
+            }
+            for (int r = 0; r < MASKS[n[1]]; r++) {
+                TERM1[shape * 78 + r] = shape == 3 ? pairs(r) : shape == 4 ? r * 13 : shape == 5 ? triples(r) : r;
+            }
+            for (int r = 0; r < MASKS[n[2]]; r++) {
+                TERM2[shape * 13 + r] = shape == 5 ? pairs(r) : r;
+            }
+            base += sizes[shape];
+        }
+    }
+
+    private HandClasses() {
+    }
+
+    /* number of multisets of 2 and 3 out of n */
+    private static int pairs(int n) {
+        return n * (n + 1) / 2;
+    }
+
+    private static int triples(int n) {
+        return n * (n + 1) * (n + 2) / 6;
+    }
+
+    /* the canonical hands and sizes of the classes, listed on first use */
+    private static final class Tables {
+
+        static final long[] HANDS = new long[CLASSES];
+        static final int[] SIZES = new int[CLASSES];
+
+        static {
+            forEachHand(hand -> {
+                int code = code(hand);
+                HANDS[code >>> 5] = canonical(hand, code);
+                SIZES[code >>> 5]++;
+            });
+        }
+    }
+
+    /* visits every hand of a 52-card deck */
+    private interface HandVisitor {
+        void visit(long hand);
+    }
+
+    private static void forEachHand(HandVisitor visitor) {
+        for (int e = 4; e < Card.CARDS; e++) {
+            long he = Card.bit(e);
+            for (int d = 3; d < e; d++) {
+                long hd = he | Card.bit(d);
+                for (int c = 2; c < d; c++) {
+                    long hc = hd | Card.bit(c);
+                    for (int b = 1; b < c; b++) {
+                        long hb = hc | Card.bit(b);
+                        for (int a = 0; a < b; a++) {
+                            visitor.visit(hb | Card.bit(a));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the class code of a 5-card hand without the joker: class id
+     * << 5 | suit renaming.
+     */
+    static int code(long hand) {
+        // lanes as sort key << 2 | suit, sorted down by a network of five
+        // compare-exchanges, without branches
+        int a0 = LANE[(int) hand & HandEvaluator.RANK_MASK] << 2;
+        int a1 = LANE[(int) (hand >>> 16) & HandEvaluator.RANK_MASK] << 2 | 1;
+        int a2 = LANE[(int) (hand >>> 32) & HandEvaluator.RANK_MASK] << 2 | 2;
+        int a3 = LANE[(int) (hand >>> 48) & HandEvaluator.RANK_MASK] << 2 | 3;
+        int b0 = Math.max(a0, a1);
+        int b1 = Math.min(a0, a1);
+        int b2 = Math.max(a2, a3);
+        int b3 = Math.min(a2, a3);
+        int l0 = Math.max(b0, b2);
+        int m2 = Math.min(b0, b2);
+        int m1 = Math.max(b1, b3);
+        int l3 = Math.min(b1, b3);
+        int l1 = Math.max(m1, m2);
+        int l2 = Math.min(m1, m2);
+
+        int shape = SHAPE[(l0 >>> 13) * 6 + (l1 >>> 13)];
+        int id = TERM0[shape * 1287 + (l0 >>> 2 & 0x7FF)] + TERM1[shape * 78 + (l1 >>> 2 & 0x7FF)]
+                + TERM2[shape * 13 + (l2 >>> 2 & 0x7FF)] + (l3 >>> 2 & 0x7FF);
+        int order = (l0 & 3) << 6 | (l1 & 3) << 4 | (l2 & 3) << 2 | (l3 & 3);
+        return id << 5 | RENAMING[order];
+    }
+
+    /* class id of a code, 0 to CLASSES - 1 */
+    static int id(int code) {
+        return code >>> 5;
+    }
+
+    /* class id of a 5-card hand without the joker */
+    static int classOf(long hand) {
+        return code(hand) >>> 5;
+    }
+
+    /* canonical hand of a class */
+    static long hand(int id) {
+        return Tables.HANDS[id];
+    }
+
+    /* number of hands in a class; the sizes add up to C(52, 5) */
+    static int size(int id) {
+        return Tables.SIZES[id];
+    }
+
+    /**
+     * Renames the suits of cards of a hand the way code() renames the hand
+     * into its canonical one.
+     */
+    static long canonical(long cards, int code) {
+        int[] suits = SUITS[code & 0x1F];
+        long canonical = 0;
+        for (int j = 0; j < 4; j++) {
+            canonical |= (cards >>> (16 * suits[j]) & HandEvaluator.RANK_MASK) << (16 * j);
+        }
+        return canonical;
+    }
+
+    /**
+     * Renames the suits of canonical cards back to those of the hand of a
+     * code; the inverse of canonical().
+     */
+    static long original(long canonical, int code) {
+        int[] suits = SUITS[code & 0x1F];
+        long cards = 0;
+        for (int j = 0; j < 4; j++) {
+            cards |= (canonical >>> (16 * j) & HandEvaluator.RANK_MASK) << (16 * suits[j]);
+        }
+        return cards;
+    }
+
+    /* Quick test: count the classes and their hands, check the renamings
+     * and measure lookups */
+    public static void main(String args[]) {
+        long start = System.nanoTime();
+        long total = 0;
+        int empty = 0;
+        for (int id = 0; id < CLASSES; id++) {
+            total += size(id);
+            empty += size(id) == 0 ? 1 : 0;
+        }
+        System.out.println(CLASSES + " classes of " + total + " hands, " + empty + " empty, listed in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        int[] errors = {0};
+        forEachHand(hand -> {
+            int code = code(hand);
+            long canonical = canonical(hand, code);
+            if (canonical != hand(id(code)) || original(canonical, code) != hand
+                    || HandEvaluator.evaluate(canonical) != HandEvaluator.evaluate(hand)) {
+                errors[0]++;
+            }
+        });
+        System.out.println("renaming errors " + errors[0]);
+
+        java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+        long[] hands = new long[1 << 16];
+        for (int i = 0; i < hands.length; i++) {
+            while (Long.bitCount(hands[i]) < 5) {
+                hands[i] |= Card.bit(random.nextInt(Card.CARDS));
+            }
+        }
+        long sum = 0;
+        for (int round = 0; round < 50; round++) {
+            start = System.nanoTime();
+            for (long hand : hands) {
+                sum += code(hand);
+            }
+            if (round == 49) {
+                System.out.printf("%.1f ns per code() of a random hand (%d)%n",
+                        (double) (System.nanoTime() - start) / hands.length, sum);
+            }
+        }
+    }
+}
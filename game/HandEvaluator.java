@@ -0,0 +1,167 @@
+package game;
+
+import java.util.List;
+
+/**
+ * class HandEvaluator classifies 5-card video poker hands without allocating
+ * or printing anything.
+ *
+ * A hand is packed into a long with one 16-bit lane per suit (Clubs in the low
+ * lane, Spades in the high lane); bit (rank - 1) of a lane is set when the card
+ * of that rank and suit is in the hand. With this encoding pairs, trips and
+ * quads fall out of a few ANDs between the lanes, and straights and flushes are
+ * answered by tables indexed with the 13-bit rank mask.
+ */
+public final class HandEvaluator {
+
+    /* payout categories, from worst to best */
+    public static final int NO_PAIR = 0;
+    public static final int LOW_PAIR = 1;        /* pair below Jacks, does not pay */
+    public static final int HIGH_PAIR = 2;       /* Jacks or Better, the "Royal Pair" */
+    public static final int TWO_PAIR = 3;
+    public static final int THREE_OF_A_KIND = 4;
+    public static final int STRAIGHT = 5;
+    public static final int FLUSH = 6;
+    public static final int FULL_HOUSE = 7;
+    public static final int FOUR_OF_A_KIND = 8;
+    public static final int STRAIGHT_FLUSH = 9;
+    public static final int ROYAL_FLUSH = 10;
+
+    /* categories of wild-card games only (see WildEvaluator); they come
+     * after the natural ones and are not in order of strength */
+    public static final int FIVE_OF_A_KIND = 11;
+    public static final int WILD_ROYAL_FLUSH = 12;
+    public static final int FOUR_WILDS = 13;     /* four deuces in Deuces Wild */
+
+    /* number of categories above */
+    public static final int CATEGORIES = 14;
+
+    /* bits of one suit lane */
+    static final int RANK_MASK = 0x1FFF;
+
+    /* rank masks of J, Q, K and A (A is bit 0) */
+    static final int HIGH_RANKS = (1 << 10) | (1 << 11) | (1 << 12) | 1;
+
+    /* 10 J Q K A */
+    static final int BROADWAY = (1 << 9) | HIGH_RANKS;
+
+    /* category of five different ranks, not suited / suited */
+    private static final byte[] UNPAIRED = new byte[RANK_MASK + 1];
+    private static final byte[] SUITED = new byte[RANK_MASK + 1];
+
+    /* category of a hand with exactly one or two pairs, indexed by pair ranks */
+    private static final byte[] PAIRED = new byte[RANK_MASK + 1];
+
+    static {
+        for (int ranks = 0; ranks <= RANK_MASK; ranks++) {
+            boolean straight = isStraight(ranks);
+            UNPAIRED[ranks] = (byte) (straight ? STRAIGHT : NO_PAIR);
+            if (ranks == BROADWAY) {
+                SUITED[ranks] = ROYAL_FLUSH;
+            } else {
+                SUITED[ranks] = (byte) (straight ? STRAIGHT_FLUSH : FLUSH);
+            }
+
+            if (Integer.bitCount(ranks) == 2) {
+                PAIRED[ranks] = TWO_PAIR;
+            } else if ((ranks & HIGH_RANKS) != 0) {
+                PAIRED[ranks] = HIGH_PAIR;
+            } else {
+                PAIRED[ranks] = LOW_PAIR;
+            }
+        }
+    }
+
+    private HandEvaluator() {
+    }
+
+    /* true if the rank mask holds exactly five consecutive ranks (A may be high) */
+    private static boolean isStraight(int ranks) {
+        if (Integer.bitCount(ranks) != 5) {
+            return false;
+        }
+        if (ranks == BROADWAY) {
+            return true;
+        }
+        int low = Integer.numberOfTrailingZeros(ranks);
+        return ranks == (0x1F << low);
+    }
+
+    /**
+     * Returns the bit of a card in the packed hand encoding.
+     *
+     * @param rank 1-13 (see Card.Rank[])
+     * @param suit 0-3  (see Card.Suit[])
+     */
+    public static long bit(int rank, int suit) {
+        return 1L << ((suit << 4) + rank - 1);
+    }
+
+    /**
+     * Packs a list of cards into the hand encoding.
+     */
+    static long pack(List<Card> cards) {
+        long hand = 0;
+        for (int i = 0; i < cards.size(); i++) {
+            hand |= Card.bit(cards.get(i).getIndex());
+        }
+        return hand;
+    }
+
+    /**
+     * Classifies a packed 5-card hand.
+     *
+     * @param hand exactly five card bits (see bit())
+     * @return one of the category constants, NO_PAIR to ROYAL_FLUSH
+     */
+    public static int evaluate(long hand) {
+        int c = (int) hand & RANK_MASK;
+        int d = (int) (hand >>> 16) & RANK_MASK;
+        int h = (int) (hand >>> 32) & RANK_MASK;
+        int s = (int) (hand >>> 48) & RANK_MASK;
+
+        // ranks held by at least two suits
+        int pairs = (c & d) | (h & s) | ((c | d) & (h | s));
+        if (pairs == 0) {
+            int ranks = c | d | h | s;
+            if ((c == ranks) | (d == ranks) | (h == ranks) | (s == ranks)) {
+                return SUITED[ranks];
+            }
+            return UNPAIRED[ranks];
+        }
+
+        // ranks held by at least three suits
+        int trips = (c & d & (h | s)) | (h & s & (c | d));
+        if (trips != 0) {
+            if ((c & d & h & s) != 0) {
+                return FOUR_OF_A_KIND;
+            }
+            return pairs != trips ? FULL_HOUSE : THREE_OF_A_KIND;
+        }
+        return PAIRED[pairs];
+    }
+
+    /**
+     * Returns the rank (1-13) that names a packed hand: the rank of the quads,
+     * trips or highest pair, otherwise the highest card. Aces count high.
+     * Meant for messages, not for the hot path.
+     */
+    public static int primaryRank(long hand) {
+        int c = (int) hand & RANK_MASK;
+        int d = (int) (hand >>> 16) & RANK_MASK;
+        int h = (int) (hand >>> 32) & RANK_MASK;
+        int s = (int) (hand >>> 48) & RANK_MASK;
+
+        int ranks = (c & d & (h | s)) | (h & s & (c | d));
+        if (ranks == 0) {
+            ranks = (c & d) | (h & s) | ((c | d) & (h | s));
+        }
+        if (ranks == 0) {
+            ranks = c | d | h | s;
+        }
+        if ((ranks & 1) != 0) {
+            return 1;
+        }
+        return 32 - Integer.numberOfLeadingZeros(ranks);
+    }
+}
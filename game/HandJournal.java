@@ -0,0 +1,590 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * class HandJournal is an append-only record of every hand played, for audit
+ * and dispute handling.
+ *
+ * The journal is a directory of segment files of fixed size, each mapped
+ * into memory and filled with fixed-width records; a full segment is closed
+ * and the next one started (rotation). Appending copies a round into the
+ * mapping under a lock, so it costs no system call. A commit thread forces
+ * the written pages to disk every few milliseconds for all rounds appended
+ * since the last time (group commit); await() blocks until a round is on
+ * disk.
+ *
+ * Segment layout (little endian):
+ *   header  64 bytes: magic, version, record size, records per segment,
+ *                     sequence of the first record, zero padding
+ *   records RECORD bytes each:
+ *     0  long  sequence, from 1, one per hand
+ *     8  long  session id
+ *     16 int   dealt cards, five 6-bit card indices, card 0 lowest
+ *     20 int   final cards of this hand, same packing
+ *     24 int   Paytable.id() of the game played
+ *     28 int   bet on this hand
+ *     32 int   payout of this hand; for a jackpot, the credits claimed
+ *     36 int   session balance after the round
+ *     40 byte  hold mask
+ *     41 byte  index of this hand in the round (multi-hand games)
+ *     42 byte  number of hands in the round
+ *     43 byte  category, plus JACKPOT if the hand won the progressive
+ *              jackpot
+ *     44 int   CRC32C of bytes 0-43
+ * A record of zeros ends the journal; a record whose checksum does not match
+ * was torn by a crash and ends it too.
+ */
+final class HandJournal implements AutoCloseable {
+
+    /* "VPHJ" */
+    static final int MAGIC = 0x56504A48;
+    static final int VERSION = 3;
+
+    static final int HEADER = 64;
+    static final int RECORD = 48;
+
+    /* flag of the category byte: the hand won the progressive jackpot */
+    static final int JACKPOT = 0x80;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".vphj";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long commitMillis;
+    private final Thread committer;
+
+    /* guarded by this */
+    private MappedByteBuffer segment;
+    private int capacity;              /* records that fit in segment */
+    private int records;               /* records in segment */
+    private int unforced;              /* first record of segment not yet forced */
+    private long nextSequence;
+    private final ArrayDeque<MappedByteBuffer> retired = new ArrayDeque<>();
+    private boolean closed;
+    private IOException failure;
+
+    /* guarded by this; rounds up to here are on disk */
+    private long durable;
+
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Opens a journal, continuing after the last complete record found.
+     *
+     * @param directory      directory of the segment files, created if needed
+     * @param segmentRecords records per segment file
+     * @param commitMillis   longest time between two forces to disk
+     */
+    HandJournal(Path directory, int segmentRecords, long commitMillis) throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.commitMillis = commitMillis;
+        Files.createDirectories(directory);
+
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            nextSequence = 1;
+            segment = create(1);
+        } else {
+            segment = map(segments.get(segments.size() - 1), FileChannel.MapMode.READ_WRITE);
+            long first = segment.getLong(16);
+            while (records < segment.getInt(12) && valid(segment, records)) {
+                records++;
+            }
+            nextSequence = first + records;
+        }
+        capacity = segment.getInt(12);
+        unforced = records;
+        durable = nextSequence - 1;
+
+        committer = new Thread(this::commitLoop, "journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Appends the hands of one settled round as consecutive records.
+     *
+     * @param finalCards final cards of each hand, 6-bit index packing
+     * @param categories category of each hand
+     * @param payouts    payout of each hand
+     * @param jackpots   credits each hand won from the progressive jackpot,
+     *                   -1 if none, or null without a jackpot
+     * @return sequence of the round's last record, for await()
+     */
+    synchronized long append(long session, Paytable paytable, int dealt, int holdMask, int bet, int balance,
+            int hands, int[] finalCards, byte[] categories, int[] payouts, long[] jackpots) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        int game = paytable.id();
+        for (int h = 0; h < hands; h++) {
+            if (records == capacity) {
+                rotate();
+            }
+            int at = HEADER + records * RECORD;
+            segment.putLong(at, nextSequence);
+            segment.putLong(at + 8, session);
+            segment.putInt(at + 16, dealt);
+            segment.putInt(at + 20, finalCards[h]);
+            segment.putInt(at + 24, game);
+            segment.putInt(at + 28, bet);
+            segment.putInt(at + 32, payouts[h]);
+            segment.putInt(at + 36, balance);
+            segment.put(at + 40, (byte) holdMask);
+            segment.put(at + 41, (byte) h);
+            segment.put(at + 42, (byte) hands);
+            segment.put(at + 43, jackpots != null && jackpots[h] >= 0
+                    ? (byte) (categories[h] | JACKPOT) : categories[h]);
+            segment.putInt(at + 44, checksum(segment, at));
+            records++;
+            nextSequence++;
+        }
+        return nextSequence - 1;
+    }
+
+    /**
+     * Blocks until the record of a sequence is on disk.
+     */
+    synchronized void await(long sequence) throws IOException, InterruptedException {
+        while (durable < sequence) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            notifyAll();
+            wait();
+        }
+    }
+
+    /* sequence of the last appended record */
+    synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Forces everything appended to disk and stops the commit thread.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+    }
+
+    /* starts the next segment; the full one is forced by the commit thread */
+    private void rotate() throws IOException {
+        retired.add(segment);
+        segment = create(nextSequence);
+        capacity = segmentRecords;
+        records = 0;
+        unforced = 0;
+    }
+
+    private MappedByteBuffer create(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) segmentRecords * RECORD);
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD).putInt(12, segmentRecords);
+        map.putLong(16, firstSequence);
+        map.force(0, HEADER);
+        return map;
+    }
+
+    /* maps an existing segment and checks its header */
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                ? FileChannel.open(file, StandardOpenOption.READ)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER) {
+                throw new IOException("Not a journal segment: " + file);
+            }
+            map = channel.map(mode, 0, channel.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != RECORD
+                || map.capacity() != HEADER + (long) map.getInt(12) * RECORD) {
+            throw new IOException("Not a journal segment: " + file);
+        }
+        return map;
+    }
+
+    private void commitLoop() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    wait(commitMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                commit();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * Forces the records appended so far. Writers keep appending meanwhile:
+     * only the range taken under the lock is declared durable.
+     */
+    private void commit() throws IOException {
+        List<MappedByteBuffer> full;
+        MappedByteBuffer current;
+        int from;
+        int to;
+        long sequence;
+        synchronized (this) {
+            full = new ArrayList<>(retired);
+            retired.clear();
+            current = segment;
+            from = unforced;
+            to = records;
+            unforced = records;
+            sequence = nextSequence - 1;
+        }
+        try {
+            for (MappedByteBuffer map : full) {
+                map.force();
+            }
+            if (to > from) {
+                current.force(HEADER + from * RECORD, (to - from) * RECORD);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot force journal", e);
+        }
+        synchronized (this) {
+            durable = Math.max(durable, sequence);
+            notifyAll();
+        }
+    }
+
+    private int checksum(MappedByteBuffer map, int at) {
+        crc.reset();
+        crc.update(map.duplicate().position(at).limit(at + 44));
+        return (int) crc.getValue();
+    }
+
+    /* true if record i of a segment is complete */
+    private static boolean valid(MappedByteBuffer map, int i) {
+        int at = HEADER + i * RECORD;
+        if (map.getLong(at) == 0) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(map.duplicate().position(at).limit(at + 44));
+        return (int) crc.getValue() == map.getInt(at + 44);
+    }
+
+    /* segment files of a directory, oldest first */
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /* 6-bit card index packing of five cards */
+    static int pack(int[] cards) {
+        int packed = 0;
+        for (int i = cards.length - 1; i >= 0; i--) {
+            packed = (packed << 6) | cards[i];
+        }
+        return packed;
+    }
+
+    private static long bits(int packed) {
+        long hand = 0;
+        for (int i = 0; i < 5; i++) {
+            hand |= Card.bit((packed >>> (6 * i)) & 0x3F);
+        }
+        return hand;
+    }
+
+    /**
+     * Re-runs every round of a journal: checks that the records are complete
+     * and in sequence, that each hand kept the held cards and drew cards not
+     * dealt before, that the evaluator gives the recorded category and
+     * payout, and that each session's balance moves by exactly the bets and
+     * payouts. A hand marked as a jackpot must be a natural Royal Flush; its
+     * payout is the pool it claimed, which the journal cannot check and
+     * counts in jackpotsPaid(). Records after the first torn one are not
+     * read.
+     *
+     * @param paytables the games that may appear in the journal, looked up
+     *                  by Paytable.id()
+     * @return a report; ok() is true if nothing was wrong
+     * @throws IllegalArgumentException if two paytables have the same id
+     */
+    static Report verify(Path directory, Paytable... paytables) throws IOException {
+        Map<Integer, Paytable> games = Paytable.registry(paytables);
+        Map<Long, Long> balances = new HashMap<>();
+        Report report = new Report();
+        long expected = -1;
+        long roundBalance = 0;
+        long roundSession = 0;
+        long roundChange = 0;
+
+        List<Path> segments = segments(directory);
+        for (Path file : segments) {
+            MappedByteBuffer map = map(file, FileChannel.MapMode.READ_ONLY);
+            int segmentRecords = map.getInt(12);
+            if (expected >= 0 && map.getLong(16) != expected) {
+                report.error("segment " + file.getFileName() + " starts at " + map.getLong(16)
+                        + ", expected " + expected);
+            }
+            for (int i = 0; i < segmentRecords; i++) {
+                int at = HEADER + i * RECORD;
+                if (!valid(map, i)) {
+                    if (map.getLong(at) != 0) {
+                        report.error("torn record at " + file.getFileName() + " #" + i);
+                    }
+                    break;
+                }
+                long sequence = map.getLong(at);
+                if (expected >= 0 && sequence != expected) {
+                    report.error("sequence " + sequence + ", expected " + expected);
+                }
+                expected = sequence + 1;
+                report.records++;
+
+                long session = map.getLong(at + 8);
+                int dealt = map.getInt(at + 16);
+                int finalCards = map.getInt(at + 20);
+                int bet = map.getInt(at + 28);
+                int payout = map.getInt(at + 32);
+                int balance = map.getInt(at + 36);
+                int holdMask = map.get(at + 40);
+                int hand = map.get(at + 41);
+                int hands = map.get(at + 42);
+                int category = map.get(at + 43) & 0xFF;
+                boolean jackpot = (category & JACKPOT) != 0;
+                category &= ~JACKPOT;
+                Paytable paytable = games.get(map.getInt(at + 24));
+                if (paytable == null) {
+                    report.error(sequence + ": unknown paytable id " + map.getInt(at + 24));
+                    continue;
+                }
+
+                long dealtBits = bits(dealt);
+                long finalBits = bits(finalCards);
+                boolean cardsOk = Long.bitCount(dealtBits) == 5 && Long.bitCount(finalBits) == 5;
+                for (int k = 0; k < 5; k++) {
+                    int card = (finalCards >>> (6 * k)) & 0x3F;
+                    boolean held = (holdMask & (1 << k)) != 0;
+                    if (held ? card != ((dealt >>> (6 * k)) & 0x3F) : (dealtBits & Card.bit(card)) != 0) {
+                        cardsOk = false;
+                    }
+                }
+                if (!cardsOk) {
+                    report.error(sequence + ": cards do not follow from the deal and holds");
+                }
+                int evaluated = paytable.evaluate(finalBits);
+                if (evaluated != category) {
+                    report.error(sequence + ": category " + category + ", evaluator says " + evaluated);
+                }
+                if (jackpot) {
+                    if (evaluated != HandEvaluator.ROYAL_FLUSH || payout < 0) {
+                        report.error(sequence + ": jackpot of " + payout + " paid to category " + evaluated);
+                    }
+                    report.jackpots++;
+                    report.jackpotsPaid += payout;
+                } else if ((long) bet * paytable.payout(finalBits, evaluated) != payout) {
+                    report.error(sequence + ": payout " + payout + ", paytable says "
+                            + (long) bet * paytable.payout(finalBits, evaluated));
+                }
+
+                if (hand == 0) {
+                    roundSession = session;
+                    roundBalance = balance;
+                    roundChange = 0;
+                } else if (session != roundSession || balance != roundBalance) {
+                    report.error(sequence + ": hand " + hand + " does not belong to the round before it");
+                }
+                roundChange += payout - bet;
+                if (hand == hands - 1) {
+                    report.rounds++;
+                    Long before = balances.put(session, (long) balance);
+                    if (before != null && before + roundChange != balance) {
+                        report.error(sequence + ": balance " + balance + ", expected " + (before + roundChange));
+                    }
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Outcome of verify().
+     */
+    static final class Report {
+
+        private static final int MAX_ERRORS = 20;
+
+        private long records;
+        private long rounds;
+        private long jackpots;
+        private long jackpotsPaid;
+        private long errors;
+        private final List<String> messages = new ArrayList<>();
+
+        private void error(String message) {
+            if (errors++ < MAX_ERRORS) {
+                messages.add(message);
+            }
+        }
+
+        boolean ok() {
+            return errors == 0;
+        }
+
+        long records() {
+            return records;
+        }
+
+        long rounds() {
+            return rounds;
+        }
+
+        long errors() {
+            return errors;
+        }
+
+        /* hands that won the progressive jackpot, and the credits they
+         * claimed, to match against Jackpot.paid() */
+        long jackpots() {
+            return jackpots;
+        }
+
+        long jackpotsPaid() {
+            return jackpotsPaid;
+        }
+
+        /* the first errors found */
+        List<String> messages() {
+            return Collections.unmodifiableList(messages);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(rounds).append(" rounds, ").append(records).append(" hands, ");
+            if (jackpots > 0) {
+                s.append(jackpots).append(" jackpots paying ").append(jackpotsPaid).append(", ");
+            }
+            s.append(errors).append(" errors");
+            for (String message : messages) {
+                s.append("\n  ").append(message);
+            }
+            return s.toString();
+        }
+    }
+
+    /* Quick test: journal rounds of a few sessions, one of them playing for a
+     * jackpot, and a round that wins it, then verify the journal, directory
+     * as first argument */
+    public static void main(String args[]) throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        if (args.length > 0) {
+            directory = Paths.get(args[0]);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        long start = System.nanoTime();
+        long last;
+        Jackpot jackpot = new Jackpot(4000, 125);
+        try (HandJournal journal = new HandJournal(directory, 1 << 20, 5)) {
+            GameSession[] sessions = {
+                new GameSession(Integer.MAX_VALUE / 2, Paytable.JACKS_OR_BETTER).journal(journal, 1),
+                new GameSession(Integer.MAX_VALUE / 2, Paytable.DEUCES_WILD, 3).journal(journal, 2),
+                new GameSession(Integer.MAX_VALUE / 2, Paytable.JOKER_POKER).journal(journal, 3),
+                new GameSession(Integer.MAX_VALUE / 2, Paytable.JACKS_OR_BETTER).jackpot(jackpot).journal(journal, 4)};
+            for (int r = 0; r < rounds; r++) {
+                GameSession session = sessions[r % sessions.length];
+                session.bet(1);
+                GameSession.Round dealt = session.deal();
+                long held = Strategy.KEEP_PAYING.heldCards(dealt.hand());
+                int holdMask = 0;
+                for (int i = 0; i < 5; i++) {
+                    if ((held & Card.bit(dealt.card(i))) != 0) {
+                        holdMask |= 1 << i;
+                    }
+                }
+                session.draw(holdMask);
+                session.settle();
+            }
+
+            // a Royal Flush drawn, as SessionSnapshots restores it, wins the
+            // jackpot; the next round checks the balance after it
+            int royal = pack(new int[] {9, 10, 11, 12, 0});
+            GameSession winner = new GameSession(1000, Paytable.JACKS_OR_BETTER).jackpot(jackpot).journal(journal, 5);
+            winner.restore(GameSession.DRAWN, 1, royal, royal, 0x1F, 0);
+            winner.settle();
+            winner.bet(1);
+            winner.deal();
+            winner.draw(0);
+            winner.settle();
+            last = journal.lastSequence();
+            journal.await(last);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(rounds + " rounds (" + last + " hands) journaled in " + elapsed / 1000000 + " ms, "
+                + (long) (rounds * 1e9 / elapsed) + " rounds/s");
+
+        start = System.nanoTime();
+        Report report = verify(directory, Paytable.JACKS_OR_BETTER, Paytable.DEUCES_WILD, Paytable.JOKER_POKER);
+        System.out.println("Verified in " + (System.nanoTime() - start) / 1000000 + " ms: " + report);
+        System.out.println(jackpot + (report.jackpots() == jackpot.claims() && report.jackpotsPaid() == jackpot.paid()
+                ? ": matches the journal" : ": MISMATCH with the journal"));
+    }
+}
@@ -0,0 +1,305 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * class HoldSolver computes the exact expected return of every hold pattern
+ * of a dealt 5-card hand.
+ *
+ * A hold pattern is a 5-bit mask: bit i set means card i of the hand is kept.
+ * expectedValues() looks the 32 returns up in the paytable's shared
+ * ExactAnalyzer, which counts the final hands once per paytable and then
+ * needs at most 32 lookups per hold instead of evaluating every completion.
+ * expectedValuesSequential() and outcomes() still evaluate each completion
+ * from the 47 unseen cards (48 in joker games), 2,598,960 evaluations over
+ * all 32 patterns, as a reference and without the analyzer's tables.
+ */
+public final class HoldSolver {
+
+    /* number of hold patterns of a 5-card hand */
+    public static final int HOLDS = 32;
+
+    /* DRAWS[n][k] = C(n, k) for k = 0..5: number of completions when drawing
+     * k cards from n unseen cards */
+    private static final int[][] DRAWS = new int[Card.CARDS + 2][6];
+
+    static {
+        for (int n = 0; n < DRAWS.length; n++) {
+            DRAWS[n][0] = 1;
+            for (int k = 1; k <= 5 && k <= n; k++) {
+                DRAWS[n][k] = DRAWS[n - 1][k - 1] + DRAWS[n - 1][k];
+            }
+        }
+    }
+
+    private HoldSolver() {
+    }
+
+    /**
+     * Returns the expected return per unit bet of all 32 hold patterns.
+     *
+     * @param currentHand the 5 dealt cards
+     * @param paytable    payouts to optimise for
+     */
+    static double[] expectedValues(List<Card> currentHand, Paytable paytable) {
+        long[] cards = new long[currentHand.size()];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = Card.bit(currentHand.get(i).getIndex());
+        }
+        return expectedValues(cards, paytable);
+    }
+
+    /**
+     * Returns the expected return per unit bet of all 32 hold patterns from
+     * the paytable's ExactAnalyzer, counting its final hands on the common
+     * fork-join pool on first use.
+     *
+     * @param cards    the 5 dealt card bits, in hand order
+     * @param paytable payouts to optimise for
+     */
+    static double[] expectedValues(long[] cards, Paytable paytable) {
+        long hand = 0;
+        for (long card : cards) {
+            hand |= card;
+        }
+        double[] byBits = ExactAnalyzer.of(paytable).expectedValues(hand);
+        // the analyzer's holds are over the cards in ascending bit order
+        int[] position = new int[cards.length];
+        for (int i = 0; i < cards.length; i++) {
+            position[i] = Long.bitCount(hand & (cards[i] - 1));
+        }
+        double[] ev = new double[HOLDS];
+        for (int hold = 0; hold < HOLDS; hold++) {
+            int mask = 0;
+            for (int i = 0; i < cards.length; i++) {
+                if ((hold & (1 << i)) != 0) {
+                    mask |= 1 << position[i];
+                }
+            }
+            ev[hold] = byBits[mask];
+        }
+        return ev;
+    }
+
+    /**
+     * Same as expectedValues() but evaluates every completion on the calling
+     * thread, for callers that already spread many hands across cores and
+     * need no analyzer tables.
+     */
+    static double[] expectedValuesSequential(long[] cards, Paytable paytable) {
+        long[] deck = unseen(cards, paytable);
+        double[] ev = new double[HOLDS];
+        for (int hold = 0; hold < HOLDS; hold++) {
+            int draw = 5 - Integer.bitCount(hold);
+            long total = total(held(cards, hold), deck, draw, 0, deck.length, paytable);
+            ev[hold] = (double) total / DRAWS[deck.length][draw];
+        }
+        return ev;
+    }
+
+    /**
+     * Returns the hold pattern with the highest expected return; on ties the
+     * lowest mask wins.
+     */
+    public static int bestHold(double[] ev) {
+        int best = 0;
+        for (int hold = 1; hold < HOLDS; hold++) {
+            if (ev[hold] > ev[best]) {
+                best = hold;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Counts the final categories of every completion of the held cards.
+     *
+     * @param hand     the 5 dealt card bits
+     * @param held     the kept subset of hand
+     * @param paytable payouts to sum
+     * @param counts   incremented by HandEvaluator category
+     * @return the summed payout of all completions
+     */
+    static long outcomes(long hand, long held, Paytable paytable, long[] counts) {
+        long[] cards = new long[5];
+        for (int i = 0; i < 5; i++) {
+            cards[i] = hand & -hand;
+            hand ^= cards[i];
+        }
+        return outcomes(held, unseen(cards, paytable), 5 - Long.bitCount(held), 0, paytable, counts);
+    }
+
+    /* number of ways to draw draw cards (0-5) from n cards (up to 53) */
+    static int draws(int n, int draw) {
+        return DRAWS[n][draw];
+    }
+
+    private static long outcomes(long held, long[] deck, int draw, int from, Paytable paytable, long[] counts) {
+        if (draw == 0) {
+            int category = paytable.evaluate(held);
+            counts[category]++;
+            return paytable.payout(held, category);
+        }
+        long total = 0;
+        for (int a = from; a <= deck.length - draw; a++) {
+            total += outcomes(held | deck[a], deck, draw - 1, a + 1, paytable, counts);
+        }
+        return total;
+    }
+
+    /* bits of the kept cards */
+    private static long held(long[] cards, int hold) {
+        long held = 0;
+        for (int i = 0; i < cards.length; i++) {
+            if ((hold & (1 << i)) != 0) {
+                held |= cards[i];
+            }
+        }
+        return held;
+    }
+
+    /* bits of the cards of the game's deck not in the hand */
+    private static long[] unseen(long[] cards, Paytable paytable) {
+        long hand = 0;
+        for (long card : cards) {
+            hand |= card;
+        }
+        long[] deck = new long[paytable.cards() - Long.bitCount(hand)];
+        int n = 0;
+        for (int card = 0; card < paytable.cards(); card++) {
+            if ((hand & Card.bit(card)) == 0) {
+                deck[n++] = Card.bit(card);
+            }
+        }
+        return deck;
+    }
+
+    /*
+     * Sums payouts over every way of drawing `draw` cards from deck whose
+     * first (lowest index) card lies in [from, to).
+     */
+    private static long total(long held, long[] deck, int draw, int from, int to, Paytable paytable) {
+        int n = deck.length;
+        long total = 0;
+        switch (draw) {
+            case 0:
+                return paytable.payout(held);
+            case 1:
+                for (int a = from; a < to; a++) {
+                    total += paytable.payout(held | deck[a]);
+                }
+                return total;
+            case 2:
+                for (int a = from; a < to; a++) {
+                    long ha = held | deck[a];
+                    for (int b = a + 1; b < n; b++) {
+                        total += paytable.payout(ha | deck[b]);
+                    }
+                }
+                return total;
+            case 3:
+                for (int a = from; a < to; a++) {
+                    long ha = held | deck[a];
+                    for (int b = a + 1; b < n; b++) {
+                        long hb = ha | deck[b];
+                        for (int c = b + 1; c < n; c++) {
+                            total += paytable.payout(hb | deck[c]);
+                        }
+                    }
+                }
+                return total;
+            case 4:
+                for (int a = from; a < to; a++) {
+                    long ha = held | deck[a];
+                    for (int b = a + 1; b < n; b++) {
+                        long hb = ha | deck[b];
+                        for (int c = b + 1; c < n; c++) {
+                            long hc = hb | deck[c];
+                            for (int d = c + 1; d < n; d++) {
+                                total += paytable.payout(hc | deck[d]);
+                            }
+                        }
+                    }
+                }
+                return total;
+            default:
+                for (int a = from; a < to; a++) {
+                    long ha = held | deck[a];
+                    for (int b = a + 1; b < n; b++) {
+                        long hb = ha | deck[b];
+                        for (int c = b + 1; c < n; c++) {
+                            long hc = hb | deck[c];
+                            for (int d = c + 1; d < n; d++) {
+                                long hd = hc | deck[d];
+                                for (int e = d + 1; e < n; e++) {
+                                    total += paytable.payout(hd | deck[e]);
+                                }
+                            }
+                        }
+                    }
+                }
+                return total;
+        }
+    }
+
+    /* Quick test: solve a dealt hand and show the best holds, then time
+     * random hands and check them against the enumeration */
+    public static void main(String args[]) {
+        try {
+            List<Card> hand = new ArrayList<>();
+            hand.add(Card.of(11, 3)); // J Spades
+            hand.add(Card.of(11, 1)); // J Diamonds
+            hand.add(Card.of(10, 3)); // 10 Spades
+            hand.add(Card.of(12, 3)); // Q Spades
+            hand.add(Card.of(4, 0));  // 4 Clubs
+            long start = System.nanoTime();
+            double[] ev = expectedValues(hand, Paytable.JACKS_OR_BETTER);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println("Hand: " + hand);
+            for (int hold = 0; hold < HOLDS; hold++) {
+                System.out.printf("hold %5s  EV %.6f%n", Integer.toBinaryString(hold), ev[hold]);
+            }
+            System.out.println("Best hold: " + Integer.toBinaryString(bestHold(ev))
+                    + " (" + elapsed / 1000000 + " ms, counting the final hands)");
+
+            SplittableRandom random = new SplittableRandom(1);
+            long[][] hands = new long[10000][];
+            for (int n = 0; n < hands.length; n++) {
+                long dealt = 0;
+                hands[n] = new long[5];
+                for (int i = 0; i < 5; i++) {
+                    long card;
+                    do {
+                        card = Card.bit(random.nextInt(Card.CARDS));
+                    } while ((dealt & card) != 0);
+                    dealt |= card;
+                    hands[n][i] = card;
+                }
+            }
+            double sum = 0;
+            for (int round = 0; round < 5; round++) {
+                start = System.nanoTime();
+                for (long[] cards : hands) {
+                    sum += bestHold(expectedValues(cards, Paytable.JACKS_OR_BETTER));
+                }
+                elapsed = System.nanoTime() - start;
+            }
+            System.out.printf("%.2f us per hand over %d random hands (%.0f)%n",
+                    elapsed / 1e3 / hands.length, hands.length, sum);
+            double worst = 0;
+            for (int n = 0; n < 20; n++) {
+                double[] counted = expectedValues(hands[n], Paytable.JACKS_OR_BETTER);
+                double[] enumerated = expectedValuesSequential(hands[n], Paytable.JACKS_OR_BETTER);
+                for (int hold = 0; hold < HOLDS; hold++) {
+                    worst = Math.max(worst, Math.abs(counted[hold] - enumerated[hold]));
+                }
+            }
+            System.out.println("largest difference from the enumeration over 20 hands: " + worst);
+        } catch (PlayingCardException e) {
+            System.out.println("PlayingCardException: " + e.getMessage());
+        }
+    }
+}
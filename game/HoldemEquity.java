@@ -0,0 +1,485 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * class HoldemEquity computes the chances of 2 to 10 Hold'em hands to win or
+ * split the pot, given their hole cards and the board dealt so far.
+ *
+ * Every possible rest of the board is played when that takes at most
+ * EXACT_LIMIT hand evaluations (every pre-flop heads-up matchup, 1,712,304
+ * boards, is exact); otherwise boards are sampled at random and each equity
+ * comes with a 95% confidence bound. Both run as fork-join tasks on the common
+ * pool.
+ *
+ * Queries with the default limits are cached. A query is first put in a
+ * canonical form, trying every renaming of the suits and sorting the hands,
+ * so that e.g. AsKs vs QhQd and AhKh vs QcQs share one entry; the cached
+ * result is then given back in the caller's order of hands.
+ */
+final class HoldemEquity {
+
+    /* hand evaluations up to which the board is enumerated */
+    static final long EXACT_LIMIT = 1L << 22;
+
+    /* random boards played when the board is not enumerated */
+    static final int SAMPLES = 1 << 20;
+
+    /* boards per task: enumerated boards are split by their lowest card,
+     * sampled ones in chunks of this size */
+    private static final int CHUNK = 1 << 14;
+
+    /* a split pot is counted in units of 1/2520, which every number of
+     * players from 1 to 10 divides */
+    private static final int UNITS = 2520;
+
+    private static final BoundedCache<Key, Result> cache = new BoundedCache<>(4096);
+
+    /* the 24 orders of the four suits */
+    private static final int[][] suitOrders = new int[24][];
+
+    static {
+        int n = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    int d = 6 - a - b - c;
+                    if (a != b && a != c && b != c && d != a && d != b && d != c) {
+                        suitOrders[n++] = new int[] {a, b, c, d};
+                    }
+                }
+            }
+        }
+    }
+
+    private HoldemEquity() {
+    }
+
+    /**
+     * Returns the equities of hands with the default limits, from the cache
+     * if the same matchup was asked before.
+     *
+     * @param holes two packed cards per hand (see HandEvaluator)
+     * @param board 0, 3, 4 or 5 packed cards
+     * @throws IllegalArgumentException if the cards are not valid or shared
+     */
+    static Result equity(long[] holes, long board) {
+        check(holes, board);
+        long[] canonical = new long[holes.length + 1];
+        int[] positions = new int[holes.length];
+        canonicalize(holes, board, canonical, positions);
+        Result result = cache.get(new Key(canonical), key -> compute(
+                Arrays.copyOfRange(key.cards, 1, key.cards.length), key.cards[0],
+                EXACT_LIMIT, SAMPLES, DeckRandom.splittable()));
+        return result.reorder(positions);
+    }
+
+    /**
+     * Computes the equities of hands without the cache.
+     *
+     * @param exactLimit hand evaluations up to which boards are enumerated
+     * @param samples    random boards otherwise
+     * @param random     generator of the random boards, split once per task
+     */
+    static Result compute(long[] holes, long board, long exactLimit, int samples, DeckRandom random) {
+        check(holes, board);
+        long used = board;
+        for (long hole : holes) {
+            used |= hole;
+        }
+        int[] deck = new int[Card.CARDS - Long.bitCount(used)];
+        for (int card = 0, n = 0; card < Card.CARDS; card++) {
+            if ((used & Card.bit(card)) == 0) {
+                deck[n++] = card;
+            }
+        }
+        int missing = 5 - Long.bitCount(board);
+        long boards = HoldSolver.draws(deck.length, missing);
+
+        boolean exact = boards * holes.length <= exactLimit;
+        Tally tally;
+        if (exact) {
+            int firsts = missing == 0 ? 1 : deck.length - missing + 1;
+            tally = ForkJoinPool.commonPool().invoke(new Enumerate(holes, board, deck, missing, 0, firsts));
+        } else {
+            tally = ForkJoinPool.commonPool().invoke(new Sample(holes, board, deck, missing, samples, random));
+        }
+        return new Result(tally, exact);
+    }
+
+    private static void check(long[] holes, long board) {
+        if (holes.length < 2 || holes.length > 10) {
+            throw new IllegalArgumentException("Invalid number of hands: " + holes.length);
+        }
+        int boardCards = Long.bitCount(board);
+        if (boardCards == 1 || boardCards == 2 || boardCards > 5 || !isCards(board)) {
+            throw new IllegalArgumentException("Invalid board: " + boardCards + " cards");
+        }
+        long used = board;
+        for (long hole : holes) {
+            if (Long.bitCount(hole) != 2 || !isCards(hole)) {
+                throw new IllegalArgumentException("Invalid hole cards: " + Long.toHexString(hole));
+            }
+            if ((used & hole) != 0) {
+                throw new IllegalArgumentException("Card dealt twice: " + Long.toHexString(used & hole));
+            }
+            used |= hole;
+        }
+    }
+
+    /* true if only bits of the 52 cards are set, no joker */
+    private static boolean isCards(long cards) {
+        return (cards & ~(0x1FFFL * 0x0001000100010001L)) == 0;
+    }
+
+    /**
+     * Writes the smallest of the board and sorted hands under every renaming
+     * of the suits into canonical (board first), and for every hand its
+     * position among the sorted hands into positions.
+     */
+    private static void canonicalize(long[] holes, long board, long[] canonical, int[] positions) {
+        long[] candidate = new long[canonical.length];
+        long[] renamed = new long[holes.length];
+        Arrays.fill(canonical, -1);
+        int[] best = null;
+        for (int[] order : suitOrders) {
+            candidate[0] = rename(board, order);
+            for (int i = 0; i < holes.length; i++) {
+                renamed[i] = rename(holes[i], order);
+            }
+            System.arraycopy(renamed, 0, candidate, 1, holes.length);
+            Arrays.sort(candidate, 1, candidate.length);
+            if (Arrays.compareUnsigned(candidate, canonical) < 0) {
+                System.arraycopy(candidate, 0, canonical, 0, candidate.length);
+                best = order;
+            }
+        }
+        for (int i = 0; i < holes.length; i++) {
+            long hole = rename(holes[i], best);
+            positions[i] = Arrays.binarySearch(canonical, 1, canonical.length, hole) - 1;
+        }
+    }
+
+    /* moves suit lane i of cards to lane order[i] */
+    private static long rename(long cards, int[] order) {
+        long renamed = 0;
+        for (int suit = 0; suit < 4; suit++) {
+            renamed |= ((cards >>> (16 * suit)) & HandEvaluator.RANK_MASK) << (16 * order[suit]);
+        }
+        return renamed;
+    }
+
+    /* a canonical query: the board, then the sorted hands */
+    private static final class Key {
+
+        final long[] cards;
+        private final int hash;
+
+        Key(long[] cards) {
+            this.cards = cards;
+            this.hash = Arrays.hashCode(cards);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(cards, ((Key) o).cards);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /* boards played and, per hand, pots won alone, pots split, pot shares
+     * in UNITS and the sum of squared shares (for the sampling error) */
+    private static final class Tally {
+
+        long boards;
+        final long[] wins;
+        final long[] ties;
+        final long[] shares;
+        final double[] squares;
+
+        Tally(int hands) {
+            wins = new long[hands];
+            ties = new long[hands];
+            shares = new long[hands];
+            squares = new double[hands];
+        }
+
+        /* plays one complete board */
+        void play(long[] holes, long board, int[] strengths) {
+            int best = -1;
+            int winners = 0;
+            for (int i = 0; i < holes.length; i++) {
+                int strength = HoldemEvaluator.evaluate(holes[i] | board);
+                strengths[i] = strength;
+                if (strength > best) {
+                    best = strength;
+                    winners = 1;
+                } else if (strength == best) {
+                    winners++;
+                }
+            }
+            boards++;
+            for (int i = 0; i < holes.length; i++) {
+                if (strengths[i] == best) {
+                    if (winners == 1) {
+                        wins[i]++;
+                    } else {
+                        ties[i]++;
+                    }
+                    shares[i] += UNITS / winners;
+                    squares[i] += 1.0 / (winners * winners);
+                }
+            }
+        }
+
+        Tally add(Tally other) {
+            boards += other.boards;
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+                ties[i] += other.ties[i];
+                shares[i] += other.shares[i];
+                squares[i] += other.squares[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Plays every board whose lowest missing card is deck[from, to).
+     */
+    private static final class Enumerate extends RecursiveTask<Tally> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] holes;
+        private final long board;
+        private final int[] deck;
+        private final int missing;
+        private final int from;
+        private final int to;
+
+        Enumerate(long[] holes, long board, int[] deck, int missing, int from, int to) {
+            this.holes = holes;
+            this.board = board;
+            this.deck = deck;
+            this.missing = missing;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                Enumerate left = new Enumerate(holes, board, deck, missing, from, mid);
+                left.fork();
+                Tally tally = new Enumerate(holes, board, deck, missing, mid, to).compute();
+                return tally.add(left.join());
+            }
+            Tally tally = new Tally(holes.length);
+            int[] strengths = new int[holes.length];
+            if (missing == 0) {
+                tally.play(holes, board, strengths);
+            } else {
+                enumerate(tally, strengths, board | Card.bit(deck[from]), from + 1, missing - 1);
+            }
+            return tally;
+        }
+
+        private void enumerate(Tally tally, int[] strengths, long cards, int start, int left) {
+            if (left == 0) {
+                tally.play(holes, cards, strengths);
+                return;
+            }
+            for (int i = start; i <= deck.length - left; i++) {
+                enumerate(tally, strengths, cards | Card.bit(deck[i]), i + 1, left - 1);
+            }
+        }
+    }
+
+    /**
+     * Plays random boards, split in CHUNK sized tasks with a generator each.
+     */
+    private static final class Sample extends RecursiveTask<Tally> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] holes;
+        private final long board;
+        private final int[] deck;
+        private final int missing;
+        private final int samples;
+        private final DeckRandom random;
+
+        Sample(long[] holes, long board, int[] deck, int missing, int samples, DeckRandom random) {
+            this.holes = holes;
+            this.board = board;
+            this.deck = deck;
+            this.missing = missing;
+            this.samples = samples;
+            this.random = random;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (samples > CHUNK) {
+                int half = samples >>> 1;
+                Sample left = new Sample(holes, board, deck, missing, half, random.split());
+                left.fork();
+                Tally tally = new Sample(holes, board, deck, missing, samples - half, random).compute();
+                return tally.add(left.join());
+            }
+            Tally tally = new Tally(holes.length);
+            int[] strengths = new int[holes.length];
+            int[] cards = deck.clone();
+            int[] indices = new int[missing * samples];
+            random.fillIndices(indices, 0, cards.length, missing, samples);
+            for (int s = 0, r = 0; s < samples; s++) {
+                long dealt = board;
+                for (int i = 0; i < missing; i++) {
+                    int j = i + indices[r++];
+                    int card = cards[j];
+                    cards[j] = cards[i];
+                    cards[i] = card;
+                    dealt |= Card.bit(card);
+                }
+                tally.play(holes, dealt, strengths);
+            }
+            return tally;
+        }
+    }
+
+    /**
+     * class Result (immutable): per hand, the chances to win alone, to split
+     * the pot and the expected share of the pot
+     */
+    static final class Result {
+
+        private final long boards;
+        private final boolean exact;
+        private final double[] wins;
+        private final double[] ties;
+        private final double[] equities;
+        private final double[] errors;
+
+        private Result(Tally tally, boolean exact) {
+            int hands = tally.wins.length;
+            this.boards = tally.boards;
+            this.exact = exact;
+            this.wins = new double[hands];
+            this.ties = new double[hands];
+            this.equities = new double[hands];
+            this.errors = new double[hands];
+            double n = tally.boards;
+            for (int i = 0; i < hands; i++) {
+                wins[i] = tally.wins[i] / n;
+                ties[i] = tally.ties[i] / n;
+                equities[i] = tally.shares[i] / (n * UNITS);
+                if (!exact) {
+                    double variance = Math.max(0, tally.squares[i] / n - equities[i] * equities[i]);
+                    errors[i] = 1.96 * Math.sqrt(variance / n);
+                }
+            }
+        }
+
+        private Result(Result result, int[] positions) {
+            this.boards = result.boards;
+            this.exact = result.exact;
+            this.wins = new double[positions.length];
+            this.ties = new double[positions.length];
+            this.equities = new double[positions.length];
+            this.errors = new double[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                wins[i] = result.wins[positions[i]];
+                ties[i] = result.ties[positions[i]];
+                equities[i] = result.equities[positions[i]];
+                errors[i] = result.errors[positions[i]];
+            }
+        }
+
+        /* the result with hand i taken from hand positions[i] of this one */
+        Result reorder(int[] positions) {
+            return new Result(this, positions);
+        }
+
+        int hands() {
+            return wins.length;
+        }
+
+        /* boards played */
+        long boards() {
+            return boards;
+        }
+
+        /* true if every board was played, false if boards were sampled */
+        boolean exact() {
+            return exact;
+        }
+
+        /* chance that hand i wins the whole pot */
+        double win(int i) {
+            return wins[i];
+        }
+
+        /* chance that hand i splits the pot */
+        double tie(int i) {
+            return ties[i];
+        }
+
+        /* expected share of the pot of hand i */
+        double equity(int i) {
+            return equities[i];
+        }
+
+        /* half-width of the 95% confidence interval of equity(i), 0 if exact */
+        double error(int i) {
+            return errors[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(exact ? "exact, " : "sampled, ").append(boards).append(" boards\n");
+            for (int i = 0; i < wins.length; i++) {
+                s.append(String.format("hand %d\twin %6.3f%%\ttie %6.3f%%\tequity %6.3f%%", i, 100 * wins[i],
+                        100 * ties[i], 100 * equities[i]));
+                if (!exact) {
+                    s.append(String.format(" +/- %.3f%%", 100 * errors[i]));
+                }
+                s.append('\n');
+            }
+            return s.toString();
+        }
+    }
+
+    /* Quick test: a pre-flop race exactly, its suit-renamed twin from the
+     * cache, and a four-way pot by sampling */
+    public static void main(String args[]) {
+        long aceKing = HandEvaluator.bit(1, 3) | HandEvaluator.bit(13, 3);    /* AsKs */
+        long queens = HandEvaluator.bit(12, 2) | HandEvaluator.bit(12, 1);    /* QhQd */
+        long start = System.nanoTime();
+        System.out.print(equity(new long[] {aceKing, queens}, 0));
+        long middle = System.nanoTime();
+        // expected about 46% vs 54%
+        System.out.print(equity(new long[] {HandEvaluator.bit(12, 0) | HandEvaluator.bit(12, 3),
+            HandEvaluator.bit(1, 2) | HandEvaluator.bit(13, 2)}, 0));
+        long end = System.nanoTime();
+        System.out.println("exact in " + (middle - start) / 1000000 + " ms, renamed twin in "
+                + (end - middle) / 1000 + " us");
+
+        // four hands pre-flop: 4 * 1,086,008 boards is over the limit
+        long[] four = new long[4];
+        for (int i = 0; i < four.length; i++) {
+            four[i] = HandEvaluator.bit(i + 2, 0) | HandEvaluator.bit(i + 8, 1);
+        }
+        start = System.nanoTime();
+        System.out.print(equity(four, 0));
+        System.out.println("sampled in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
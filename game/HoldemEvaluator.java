@@ -0,0 +1,295 @@
+package game;
+
+/**
+ * class HoldemEvaluator ranks the best five cards of a 5, 6 or 7 card hand,
+ * for Texas Hold'em, without allocating.
+ *
+ * The result is a strength from 0 (7-5-4-3-2 offsuit) to 7461 (royal flush):
+ * one number for each of the 7462 classes of equal 5-card hands, so two hands
+ * compare with < and tie exactly when they split the pot.
+ *
+ * Hands use the packed encoding of HandEvaluator. Each suit lane is first
+ * turned into a value mask with the ace on top (bit 0 = 2, bit 12 = A). A lane
+ * with five or more cards is a flush and is looked up alone. Otherwise the
+ * ranks held once, twice, three and four times come from ANDs between the
+ * lanes, as in HandEvaluator, and the kickers are ranked by their position
+ * among all sets of the same size: in bit-mask order, which is the order of
+ * their highest card, then the next, and so on.
+ */
+public final class HoldemEvaluator {
+
+    /* first strength of each category; a category holds the strengths up to
+     * the next one */
+    public static final int HIGH_CARD = 0;
+    public static final int ONE_PAIR = 1277;
+    public static final int TWO_PAIR = 4137;
+    public static final int THREE_OF_A_KIND = 4995;
+    public static final int STRAIGHT = 5853;
+    public static final int FLUSH = 5863;
+    public static final int FULL_HOUSE = 7140;
+    public static final int FOUR_OF_A_KIND = 7296;
+    public static final int STRAIGHT_FLUSH = 7452;
+
+    /* number of strengths */
+    public static final int CLASSES = 7462;
+
+    private static final int[] starts = {HIGH_CARD, ONE_PAIR, TWO_PAIR, THREE_OF_A_KIND, STRAIGHT, FLUSH,
+        FULL_HOUSE, FOUR_OF_A_KIND, STRAIGHT_FLUSH, CLASSES};
+    private static final String[] names = {"High Card", "One Pair", "Two Pair", "Three of a Kind",
+        "Straight", "Flush", "Full House", "Four of a Kind", "Straight Flush"};
+
+    private static final int VALUES = 1 << 13;
+
+    /* bit 0 (the ace) and bits 1-12 of every suit lane */
+    private static final long ACES = 0x0001000100010001L;
+    private static final long NOT_ACES = 0x1FFE1FFE1FFE1FFEL;
+
+    /* for value masks: 1 + high card value of the best straight (3 for
+     * 5-high ... 12 for A-high), 0 if none */
+    private static final byte[] STRAIGHTS = new byte[VALUES];
+
+    /* for value masks of five or more values without a straight in them:
+     * position of the best five among the 1277 such sets */
+    private static final short[] FIVES = new short[VALUES];
+
+    /* position of a value mask among the masks with as many bits, in
+     * numeric order (combinatorial number system) */
+    private static final short[] COLEX = new short[VALUES];
+
+    /* the highest 1, 2 and 3 bits of a value mask */
+    private static final short[] TOP1 = new short[VALUES];
+    private static final short[] TOP2 = new short[VALUES];
+    private static final short[] TOP3 = new short[VALUES];
+
+    static {
+        int[][] choose = new int[14][4];
+        for (int n = 0; n < 14; n++) {
+            choose[n][0] = 1;
+            for (int k = 1; k < 4 && k <= n; k++) {
+                choose[n][k] = choose[n - 1][k - 1] + choose[n - 1][k];
+            }
+        }
+        int fives = 0;
+        for (int mask = 0; mask < VALUES; mask++) {
+            STRAIGHTS[mask] = (byte) straightHigh(mask);
+            int bits = Integer.bitCount(mask);
+            if (bits == 5 && STRAIGHTS[mask] == 0) {
+                FIVES[mask] = (short) fives++;
+            }
+            if (bits <= 3) {
+                int colex = 0;
+                for (int m = mask, k = 1; m != 0; m &= m - 1, k++) {
+                    colex += choose[Integer.numberOfTrailingZeros(m)][k];
+                }
+                COLEX[mask] = (short) colex;
+            }
+            TOP1[mask] = (short) top(mask, 1);
+            TOP2[mask] = (short) top(mask, 2);
+            TOP3[mask] = (short) top(mask, 3);
+        }
+        // masks of six or seven values rank by their best five
+        for (int mask = 0; mask < VALUES; mask++) {
+            if (Integer.bitCount(mask) > 5 && STRAIGHTS[mask] == 0) {
+                FIVES[mask] = FIVES[top(mask, 5)];
+            }
+        }
+    }
+
+    private HoldemEvaluator() {
+    }
+
+    /* 1 + high value of the best straight in a value mask, 0 if none */
+    private static int straightHigh(int mask) {
+        for (int high = 12; high >= 4; high--) {
+            int straight = 0x1F << (high - 4);
+            if ((mask & straight) == straight) {
+                return high + 1;
+            }
+        }
+        int wheel = (1 << 12) | 0xF;
+        return (mask & wheel) == wheel ? 4 : 0;
+    }
+
+    /* the highest n bits of a mask */
+    private static int top(int mask, int n) {
+        while (Integer.bitCount(mask) > n) {
+            mask &= mask - 1;
+        }
+        return mask;
+    }
+
+    /* removes bit b from a mask, moving the higher bits down one */
+    private static int without(int mask, int b) {
+        return ((mask >>> (b + 1)) << b) | (mask & ((1 << b) - 1));
+    }
+
+    /**
+     * Returns the strength of the best five cards of a packed hand.
+     *
+     * @param hand five to seven card bits (see HandEvaluator.bit())
+     * @return 0 to CLASSES - 1, higher is better
+     */
+    public static int evaluate(long hand) {
+        // value masks of all four lanes at once: aces move from bit 0 to 12
+        long values = ((hand & NOT_ACES) >>> 1) | ((hand & ACES) << 12);
+        int c = (int) values & HandEvaluator.RANK_MASK;
+        int d = (int) (values >>> 16) & HandEvaluator.RANK_MASK;
+        int h = (int) (values >>> 32) & HandEvaluator.RANK_MASK;
+        int s = (int) (values >>> 48);
+
+        // a lane of 5 to 7 cards has bit 3 set after adding 3
+        int c5 = Integer.bitCount(c) + 3;
+        int d5 = Integer.bitCount(d) + 3;
+        int h5 = Integer.bitCount(h) + 3;
+        int s5 = Integer.bitCount(s) + 3;
+        if (((c5 | d5 | h5 | s5) & 8) != 0) {
+            int flush = (c5 & 8) != 0 ? c : (d5 & 8) != 0 ? d : (h5 & 8) != 0 ? h : s;
+            int straight = STRAIGHTS[flush];
+            return straight != 0 ? STRAIGHT_FLUSH + straight - 4 : FLUSH + FIVES[flush];
+        }
+
+        int ranks = c | d | h | s;
+        int pairs = (c & d) | (h & s) | ((c | d) & (h | s));
+        if (pairs == 0) {
+            int straight = STRAIGHTS[ranks];
+            return straight != 0 ? STRAIGHT + straight - 4 : HIGH_CARD + FIVES[ranks];
+        }
+
+        int trips = (c & d & (h | s)) | (h & s & (c | d));
+        if (trips != 0) {
+            int quads = c & d & h & s;
+            if (quads != 0) {
+                int q = Integer.numberOfTrailingZeros(quads);
+                int kicker = 31 - Integer.numberOfLeadingZeros(ranks & ~quads);
+                return FOUR_OF_A_KIND + q * 12 + kicker - (kicker > q ? 1 : 0);
+            }
+            int t = 31 - Integer.numberOfLeadingZeros(trips);
+            int rest = pairs & ~(1 << t);
+            if (rest != 0) {
+                int p = 31 - Integer.numberOfLeadingZeros(rest);
+                return FULL_HOUSE + t * 12 + p - (p > t ? 1 : 0);
+            }
+        }
+
+        int straight = STRAIGHTS[ranks];
+        if (straight != 0) {
+            return STRAIGHT + straight - 4;
+        }
+
+        if (trips != 0) {
+            int t = Integer.numberOfTrailingZeros(trips);
+            return THREE_OF_A_KIND + t * 66 + COLEX[without(TOP2[ranks & ~trips], t)];
+        }
+
+        if ((pairs & (pairs - 1)) != 0) {
+            int two = TOP2[pairs];
+            int kicker = TOP1[ranks & ~two];
+            int k = Integer.numberOfTrailingZeros(kicker);
+            int below = Integer.bitCount(two & (kicker - 1));
+            return TWO_PAIR + COLEX[two] * 11 + k - below;
+        }
+
+        int p = Integer.numberOfTrailingZeros(pairs);
+        return ONE_PAIR + p * 220 + COLEX[without(TOP3[ranks & ~pairs], p)];
+    }
+
+    /**
+     * Returns the index of a strength's category, 0 (high card) to 8
+     * (straight flush).
+     */
+    public static int category(int strength) {
+        int category = 0;
+        while (strength >= starts[category + 1]) {
+            category++;
+        }
+        return category;
+    }
+
+    /* name of a strength's category */
+    public static String name(int strength) {
+        return names[category(strength)];
+    }
+
+    /* Quick test: count the classes of all 5-card hands, check 7-card hands
+     * against their best 5-card subset and measure speed */
+    public static void main(String args[]) {
+        boolean[] seen = new boolean[CLASSES];
+        int[] perCategory = new int[names.length];
+        for (long hand : combinations(Card.CARDS, 5)) {
+            int strength = evaluate(hand);
+            if (!seen[strength]) {
+                seen[strength] = true;
+                perCategory[category(strength)]++;
+            }
+        }
+        int classes = 0;
+        for (int category = 0; category < names.length; category++) {
+            System.out.printf("%-16s\t|\t%d%n", names[category], perCategory[category]);
+            classes += perCategory[category];
+        }
+        System.out.println("classes " + classes + ", expected " + CLASSES);
+
+        java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+        long[] hands = new long[1 << 20];
+        for (int i = 0; i < hands.length; i++) {
+            while (Long.bitCount(hands[i]) < 7) {
+                hands[i] |= Card.bit(random.nextInt(Card.CARDS));
+            }
+        }
+        int mismatches = 0;
+        for (int i = 0; i < 100000; i++) {
+            int best = -1;
+            long hand = hands[i];
+            for (long drop = hand; drop != 0; drop &= drop - 1) {
+                for (long drop2 = drop & (drop - 1); drop2 != 0; drop2 &= drop2 - 1) {
+                    long five = hand & ~Long.lowestOneBit(drop) & ~Long.lowestOneBit(drop2);
+                    best = Math.max(best, evaluate(five));
+                }
+            }
+            if (best != evaluate(hand)) {
+                mismatches++;
+            }
+        }
+        System.out.println("7-card mismatches " + mismatches);
+
+        long sum = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (long hand : hands) {
+                sum += evaluate(hand);
+            }
+            if (round == 19) {
+                System.out.printf("%.0fM evaluations/s (%d)%n",
+                        hands.length * 1e3 / (System.nanoTime() - start), sum);
+            }
+        }
+    }
+
+    /* every packed hand of k cards out of the first n */
+    private static long[] combinations(int n, int k) {
+        long count = HoldSolver.draws(n, k);
+        long[] hands = new long[(int) count];
+        int[] index = new int[k];
+        for (int i = 0; i < k; i++) {
+            index[i] = i;
+        }
+        for (int h = 0; h < count; h++) {
+            long hand = 0;
+            for (int i : index) {
+                hand |= Card.bit(i);
+            }
+            hands[h] = hand;
+            int i = k - 1;
+            while (i >= 0 && index[i] == n - k + i) {
+                i--;
+            }
+            if (i >= 0) {
+                index[i]++;
+                for (int j = i + 1; j < k; j++) {
+                    index[j] = index[j - 1] + 1;
+                }
+            }
+        }
+        return hands;
+    }
+}
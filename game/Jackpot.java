@@ -0,0 +1,309 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * class Jackpot is a progressive jackpot shared by many sessions: every bet
+ * adds a fraction to the pool and a natural Royal Flush wins all of it, after
+ * which the pool starts again from its seed.
+ *
+ * Contributions run on every hand, so they are spread over padded stripes,
+ * one per thread hash, each added to with one atomic add and no lock. A
+ * claim takes the lock that orders claims, empties every stripe with an
+ * atomic swap and pays the seed plus the sum. Every contribution is thus
+ * paid exactly once: to the claim whose swap of its stripe comes after it,
+ * or if there is none yet to the pool still open; one made during a claim
+ * goes to that claim or to the next one. Claims are totally ordered by the
+ * lock and each pays the whole pool left by the one before, so two winners
+ * never share or repeat a pool.
+ *
+ * Amounts are kept in 1/10000 of a credit; a claim pays whole credits and
+ * the fraction stays in the pool. A claim whose round is not paid is
+ * released: all it took beyond the seed goes back to the pool.
+ */
+final class Jackpot {
+
+    /* units of a credit */
+    static final int UNITS = 10000;
+
+    /* longs per stripe: two cache lines, so that no two stripes share one
+     * or a prefetched neighbour */
+    private static final int PAD = 16;
+
+    private final int seed;
+    private final int rate;
+    private final int mask;
+    private final AtomicLongArray stripes;
+
+    private final Object claimLock = new Object();
+    /* units not in the stripes: the fraction of a credit left by the last
+     * claim and released claims; guarded by claimLock */
+    private long carry;
+    private long claims;
+    private long paid;
+
+    /**
+     * Creates a jackpot.
+     *
+     * @param seed credits in every new pool
+     * @param rate part of every bet added to the pool, in 1/10000
+     */
+    Jackpot(int seed, int rate) {
+        if (seed < 0 || rate < 0 || rate > UNITS) {
+            throw new IllegalArgumentException("Invalid jackpot: seed " + seed + ", rate " + rate);
+        }
+        this.seed = seed;
+        this.rate = rate;
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+        this.mask = n - 1;
+        this.stripes = new AtomicLongArray(n * PAD);
+    }
+
+    /**
+     * Adds the pool's part of a bet.
+     *
+     * @param amount total bet of a round
+     */
+    void contribute(long amount) {
+        stripes.getAndAdd(stripe(), amount * rate);
+    }
+
+    /* the stripe of the current thread */
+    private int stripe() {
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (h >>> 32) & mask) * PAD;
+    }
+
+    /**
+     * Pays the whole pool to one winner and starts a new pool from the seed.
+     *
+     * @return credits won
+     */
+    long claim() {
+        synchronized (claimLock) {
+            long units = carry;
+            for (int i = 0; i < stripes.length(); i += PAD) {
+                units += stripes.getAndSet(i, 0);
+            }
+            carry = units % UNITS;
+            long won = seed + units / UNITS;
+            claims++;
+            paid += won;
+            return won;
+        }
+    }
+
+    /**
+     * Puts back a claim whose round was not paid, as if it had not been
+     * made: the credits it took beyond the seed go to the current pool.
+     *
+     * @param credits what claim() returned
+     */
+    void release(long credits) {
+        if (credits < seed) {
+            throw new IllegalArgumentException("Invalid claim of " + credits + " credits");
+        }
+        synchronized (claimLock) {
+            carry += (credits - seed) * UNITS;
+            claims--;
+            paid -= credits;
+        }
+    }
+
+    /**
+     * Returns the credits a claim would pay now; a moving figure while bets
+     * are added.
+     */
+    long value() {
+        long units;
+        synchronized (claimLock) {
+            units = carry;
+        }
+        for (int i = 0; i < stripes.length(); i += PAD) {
+            units += stripes.get(i);
+        }
+        return seed + units / UNITS;
+    }
+
+    /* credits in every new pool */
+    int seed() {
+        return seed;
+    }
+
+    /* number of jackpots paid */
+    long claims() {
+        synchronized (claimLock) {
+            return claims;
+        }
+    }
+
+    /* credits paid by all claims */
+    long paid() {
+        synchronized (claimLock) {
+            return paid;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Jackpot[" + value() + " credits, " + claims() + " paid, " + paid() + " credits in all]";
+    }
+
+    /* Quick test: threads bet and claim at once; every unit bet must be paid
+     * exactly once */
+    public static void main(String args[]) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int bets = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        Jackpot jackpot = new Jackpot(4000, 125);
+
+        long[] contributed = new long[threads];
+        long[] won = new long[threads];
+        long[] claims = new long[threads];
+        Thread[] players = new Thread[threads];
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int player = t;
+            players[t] = new Thread(() -> {
+                java.util.SplittableRandom random = new java.util.SplittableRandom(player);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int b = 0; b < bets; b++) {
+                    int bet = 1 + random.nextInt(5);
+                    jackpot.contribute(bet);
+                    contributed[player] += bet;
+                    // far more often than a Royal Flush, to contend on claims
+                    if (random.nextInt(1000) == 0) {
+                        long claimed = jackpot.claim();
+                        // every fourth round is not paid and puts it back
+                        if (random.nextInt(4) == 0) {
+                            jackpot.release(claimed);
+                        } else {
+                            won[player] += claimed;
+                            claims[player]++;
+                        }
+                    }
+                }
+            });
+            players[t].start();
+        }
+        start.countDown();
+        for (Thread player : players) {
+            player.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long totalContributed = 0;
+        long totalWon = 0;
+        long totalClaims = 0;
+        for (int t = 0; t < threads; t++) {
+            totalContributed += contributed[t];
+            totalWon += won[t];
+            totalClaims += claims[t];
+        }
+        // every unit bet went to exactly one pool: the last one is paid out
+        // here, and all but the fraction left is paid beyond the seeds
+        totalWon += jackpot.claim();
+        totalClaims++;
+        long owed = totalContributed * jackpot.rate;
+        long accounted = (totalWon - totalClaims * jackpot.seed) * UNITS + jackpot.carry;
+        System.out.printf("%d threads x %d bets in %d ms (%.1f ns per bet)%n", threads, bets, elapsed / 1000000,
+                (double) elapsed / threads / bets);
+        System.out.println(jackpot);
+        System.out.println("claims " + totalClaims + " seen, " + jackpot.claims() + " counted; won " + totalWon
+                + ", paid " + jackpot.paid() + "; units bet " + owed + ", accounted " + accounted
+                + (owed == accounted && totalWon == jackpot.paid() && totalClaims == jackpot.claims()
+                ? ": exact" : ": MISMATCH"));
+
+        sessions(threads, Math.max(1, bets / 40));
+        overflow();
+    }
+
+    /* Royal Flushes whose payout would overflow the balance may not take the
+     * jackpot, and one whose round failed to be journaled gives it back when
+     * abandoned */
+    private static void overflow() throws Exception {
+        Jackpot jackpot = new Jackpot(4000, 125);
+        jackpot.contribute(80000);
+        int royal = HandJournal.pack(new int[] {9, 10, 11, 12, 0});
+        int refused = 0;
+        for (int room : new int[] {4999, 0}) {
+            GameSession session = new GameSession(Integer.MAX_VALUE - room, Paytable.JACKS_OR_BETTER)
+                    .jackpot(jackpot);
+            session.restore(GameSession.DRAWN, 1, royal, royal, 0x1F, 0);
+            try {
+                session.settle();
+            } catch (ArithmeticException e) {
+                if (session.phase() == GameSession.DRAWN) {
+                    refused++;
+                }
+            }
+        }
+        long value = jackpot.value();
+        long claims = jackpot.claims();
+
+        // a journal closed under the session fails to record the round
+        HandJournal journal = new HandJournal(java.nio.file.Files.createTempDirectory("journal"), 1 << 16, 5);
+        GameSession session = new GameSession(1000, Paytable.JACKS_OR_BETTER).jackpot(jackpot).journal(journal, 1);
+        session.restore(GameSession.DRAWN, 1, royal, royal, 0x1F, 0);
+        journal.close();
+        try {
+            session.settle();
+        } catch (java.io.UncheckedIOException e) {
+            refused++;
+        }
+        boolean claimed = jackpot.claims() == claims + 1 && jackpot.value() == jackpot.seed();
+        session.abandon();
+        System.out.println("unpaid royal flushes: " + refused + " of 3 refused, "
+                + (jackpot.value() == value && jackpot.claims() == claims && jackpot.paid() == 0 && claimed
+                ? "pool kept and given back" : "POOL LOST") + ": " + jackpot);
+    }
+
+    /* sessions play optimal Jacks or Better for the jackpot; the Royal
+     * Flushes they settle must be the jackpot's claims */
+    private static void sessions(int threads, int rounds) throws Exception {
+        Paytable paytable = Paytable.JACKS_OR_BETTER;
+        Strategy strategy = PaytableAnalysis.of(paytable).strategy();
+        Jackpot jackpot = new Jackpot(4000, 125);
+        long[] won = new long[threads];
+        long[] royals = new long[threads];
+        Thread[] players = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int player = t;
+            players[t] = new Thread(() -> {
+                GameSession session = new GameSession(Integer.MAX_VALUE / 2, paytable).jackpot(jackpot);
+                for (int r = 0; r < rounds; r++) {
+                    session.bet(5);
+                    GameSession.Round round = session.deal();
+                    long held = strategy.heldCards(round.hand());
+                    int holdMask = 0;
+                    for (int i = 0; i < 5; i++) {
+                        if ((held & Card.bit(round.card(i))) != 0) {
+                            holdMask |= 1 << i;
+                        }
+                    }
+                    session.draw(holdMask);
+                    round = session.settle();
+                    if (round.category() == HandEvaluator.ROYAL_FLUSH) {
+                        won[player] += round.payout();
+                        royals[player]++;
+                    }
+                }
+            });
+            players[t].start();
+        }
+        long totalWon = 0;
+        long totalRoyals = 0;
+        for (int t = 0; t < threads; t++) {
+            players[t].join();
+            totalWon += won[t];
+            totalRoyals += royals[t];
+        }
+        System.out.println(threads + " sessions x " + rounds + " rounds: " + jackpot + ", " + totalRoyals
+                + " royal flushes won " + totalWon
+                + (totalRoyals == jackpot.claims() && totalWon == jackpot.paid() ? ": exact" : ": MISMATCH"));
+    }
+}
@@ -0,0 +1,105 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * class LatencyHistogram counts durations in nanoseconds in log-linear
+ * buckets, without locks.
+ *
+ * Values below 16 have a bucket each; above that every power of two is split
+ * into 8 buckets, so a percentile is within 12.5% of the true value. Any
+ * number of threads may record at once; readers see a consistent count per
+ * bucket but not across buckets.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = LINEAR + (64 - 4) * (1 << SUB_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one duration; negative durations count as 0.
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(bucket(value));
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /* bucket of a value */
+    private static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR + ((exponent - 4) << SUB_BITS) + sub;
+    }
+
+    /* largest value of a bucket */
+    private static long highest(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = ((bucket - LINEAR) >>> SUB_BITS) + 4;
+        long sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+        long lowest = (1L << exponent) | (sub << (exponent - SUB_BITS));
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /* number of durations counted */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /* longest duration counted */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration that a fraction q (0..1) of the counted durations
+     * do not exceed, rounded up to its bucket's largest value; 0 if none.
+     */
+    long percentile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    /* Quick test: percentiles of 1..1000000 */
+    public static void main(String args[]) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000000; i++) {
+            histogram.record(i);
+        }
+        // expected about 500000, 990000, 999000 within 12.5%, and 1000000
+        System.out.println(histogram.count() + " values: p50 " + histogram.percentile(0.5) + ", p99 "
+                + histogram.percentile(0.99) + ", p99.9 " + histogram.percentile(0.999) + ", max "
+                + histogram.max());
+    }
+}
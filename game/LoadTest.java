@@ -0,0 +1,308 @@
+package game;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * class LoadTest drives simulated players through the bet, deal, draw and
+ * settle cycle of the tables of a TableHost, to measure how many players a
+ * node can host.
+ *
+ * Every player is a thread of its own, virtual when the JVM has them (see
+ * TableHost.newExecutor()) and a platform thread otherwise, with its own
+ * table and random stream. Between
+ * steps it thinks for a random time, exponential with a configurable mean,
+ * and holds the cards a Strategy keeps.
+ *
+ * Latencies are measured without coordinated omission: each player follows
+ * a schedule fixed in advance, every step due a think time after the
+ * previous step was due, and a step's latency runs from when it was due, not
+ * from when a stalled player got round to sending it. A stall of the host
+ * thus shows in the latency of every step it delayed, as a real player's
+ * would. With no think time the players send steps back to back and the
+ * latencies are of service only.
+ */
+final class LoadTest {
+
+    static final int BET = 0;
+    static final int DEAL = 1;
+    static final int DRAW = 2;
+    static final int SETTLE = 3;
+    static final int ROUND = 4;
+    private static final String[] phaseNames = {"bet", "deal", "draw", "settle", "round"};
+
+    private final TableHost host;
+    private final Strategy strategy;
+    private final int players;
+    private final long thinkNanos;
+    private final int balance;
+
+    /**
+     * Creates a load test.
+     *
+     * @param host       host of the players' tables, on its default paytable
+     * @param strategy   cards the players keep
+     * @param players    number of concurrent players
+     * @param thinkNanos mean pause of a player between steps, 0 for none
+     * @param balance    starting balance of a table; a player whose balance
+     *                   runs out opens a new table
+     */
+    LoadTest(TableHost host, Strategy strategy, int players, long thinkNanos, int balance) {
+        if (players < 1 || thinkNanos < 0 || balance < 1) {
+            throw new IllegalArgumentException("players " + players + ", think time " + thinkNanos
+                    + ", balance " + balance);
+        }
+        this.host = host;
+        this.strategy = strategy;
+        this.players = players;
+        this.thinkNanos = thinkNanos;
+        this.balance = balance;
+    }
+
+    /**
+     * Plays rounds with every player at once and waits for all of them.
+     *
+     * @param rounds rounds per player
+     * @param seed   seed of the players' think times
+     */
+    Result run(int rounds, long seed) throws InterruptedException {
+        Result result = new Result(players);
+        SplittableRandom root = new SplittableRandom(seed);
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long gcCount = -collections(collectors);
+        long gcMillis = -collectionMillis(collectors);
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(players);
+        ExecutorService executor = TableHost.newExecutor(Executors::newCachedThreadPool);
+        try {
+            for (int p = 0; p < players; p++) {
+                Player player = new Player(root.split(), result, start);
+                futures.add(executor.submit(() -> player.play(rounds)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Player failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.gcCount = gcCount + collections(collectors);
+        result.gcMillis = gcMillis + collectionMillis(collectors);
+        return result;
+    }
+
+    private static long collections(List<GarbageCollectorMXBean> collectors) {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long collectionMillis(List<GarbageCollectorMXBean> collectors) {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * class Player: one simulated player and its schedule
+     */
+    private final class Player {
+
+        private final SplittableRandom random;
+        private final Result result;
+        private TableHost.Table table;
+        /* when the next step is due */
+        private long due;
+        /* latency of the round's steps so far */
+        private long waited;
+
+        Player(SplittableRandom random, Result result, long start) {
+            this.random = random;
+            this.result = result;
+            // spread the first steps over one think time
+            this.due = start + (thinkNanos == 0 ? 0 : (long) (random.nextDouble() * thinkNanos));
+        }
+
+        void play(int rounds) {
+            table = host.open(balance);
+            try {
+                for (int r = 0; r < rounds; r++) {
+                    round();
+                }
+            } finally {
+                host.close(table.id());
+            }
+        }
+
+        private void round() {
+            waited = 0;
+            GameSession.Round round = step(BET, () -> table.bet(1));
+            if (round == null) {
+                // out of money, or a failed step: start over at a new table
+                host.close(table.id());
+                table = host.open(balance);
+                return;
+            }
+            round = step(DEAL, table::deal);
+            if (round == null) {
+                return;
+            }
+            int holdMask = holdMask(round);
+            if (step(DRAW, () -> table.draw(holdMask)) == null || step(SETTLE, table::settle) == null) {
+                return;
+            }
+            result.latencies[ROUND].record(waited);
+            result.rounds.increment();
+        }
+
+        /* runs a step when due and records its latency from then; null if
+         * it failed */
+        private GameSession.Round step(int phase, Supplier<CompletableFuture<GameSession.Round>> command) {
+            if (thinkNanos > 0) {
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+            }
+            GameSession.Round round;
+            try {
+                round = command.get().join();
+            } catch (CompletionException e) {
+                result.errors.increment();
+                round = null;
+            }
+            long done = System.nanoTime();
+            result.latencies[phase].record(done - due);
+            waited += done - due;
+            due = thinkNanos > 0 ? due + think() : done;
+            return round;
+        }
+
+        /* an exponential think time */
+        private long think() {
+            return (long) (-Math.log(1 - random.nextDouble()) * thinkNanos);
+        }
+
+        private int holdMask(GameSession.Round round) {
+            long held = strategy.heldCards(round.hand());
+            int holdMask = 0;
+            for (int i = 0; i < 5; i++) {
+                if ((held & Card.bit(round.card(i))) != 0) {
+                    holdMask |= 1 << i;
+                }
+            }
+            return holdMask;
+        }
+    }
+
+    /**
+     * Outcome of a load test: throughput, latency per phase from when each
+     * step was due, and garbage collection during the run.
+     */
+    static final class Result {
+
+        private final int players;
+        private final LongAdder rounds = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram[] latencies = new LatencyHistogram[phaseNames.length];
+        private long elapsedNanos;
+        private long gcCount;
+        private long gcMillis;
+
+        private Result(int players) {
+            this.players = players;
+            for (int p = 0; p < latencies.length; p++) {
+                latencies[p] = new LatencyHistogram();
+            }
+        }
+
+        /* rounds settled */
+        long rounds() {
+            return rounds.sum();
+        }
+
+        /* steps that failed, e.g. rejected by a full mailbox */
+        long errors() {
+            return errors.sum();
+        }
+
+        /* settled rounds per second */
+        double throughput() {
+            return rounds.sum() * 1e9 / elapsedNanos;
+        }
+
+        /* latencies of a phase, BET to SETTLE, or summed over the steps of a
+         * round, ROUND */
+        LatencyHistogram latency(int phase) {
+            return latencies[phase];
+        }
+
+        /* garbage collections during the run, and their total time */
+        long gcCount() {
+            return gcCount;
+        }
+
+        long gcMillis() {
+            return gcMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%d players, %d rounds in %d ms: %.0f rounds/s, %d errors%n", players,
+                    rounds(), elapsedNanos / 1000000, throughput(), errors()));
+            s.append(String.format("%-8s %10s %10s %10s %10s   (us)%n", "phase", "p50", "p99", "p99.9", "max"));
+            for (int p = 0; p < latencies.length; p++) {
+                LatencyHistogram latency = latencies[p];
+                s.append(String.format("%-8s %10.1f %10.1f %10.1f %10.1f%n", phaseNames[p],
+                        latency.percentile(0.5) / 1e3, latency.percentile(0.99) / 1e3,
+                        latency.percentile(0.999) / 1e3, latency.max() / 1e3));
+            }
+            s.append(String.format("GC: %d collections, %d ms, %.1f%% of the run", gcCount, gcMillis,
+                    gcMillis * 1e8 / elapsedNanos));
+            return s.toString();
+        }
+    }
+
+    /* Quick test: players [rounds] [think ms] [strategy: keep, draw or
+     * optimal] */
+    public static void main(String args[]) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double thinkMillis = args.length > 2 ? Double.parseDouble(args[2]) : 50;
+        String name = args.length > 3 ? args[3] : "keep";
+        Paytable paytable = Paytable.JACKS_OR_BETTER;
+        Strategy strategy = name.equals("optimal") ? PaytableAnalysis.of(paytable).strategy()
+                : name.equals("draw") ? Strategy.DRAW_ALL : Strategy.KEEP_PAYING;
+
+        try (DeckPool pool = new DeckPool(1, 0, 1024, 1, DeckRandom.splittable());
+                TableHost host = new TableHost(paytable, 8, null, pool)) {
+            LoadTest test = new LoadTest(host, strategy, players, (long) (thinkMillis * 1e6), 1000);
+            // a short warm-up run, then the measured one
+            test.run(Math.max(1, rounds / 10), 1);
+            System.out.println(test.run(rounds, 2));
+            System.out.println(pool);
+        }
+    }
+}
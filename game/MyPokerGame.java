@@ -39,23 +39,11 @@ public class MyPokerGame {
 
     // default constant value
     private static final int startingBalance = 100;
-    private static final int numberOfCards = 5;
 
-    // default constant payout value and currentHand types
-    private static final int[] multipliers = {1, 2, 3, 5, 6, 9, 25, 50, 250};
-    private static final String[] goodHandTypes = {
-        "Royal Pair", "Two Pair", "Three of a Kind", "Straight", "Flush     ",
-        "Full House", "Four of a Kind", "Straight Flush", "Royal Flush"};
-
-    // must use only one deck
-    private static final Decks oneDeck = new Decks(1);
-
-    // holding current poker 5-card hand, balance, bet
+    // holding current poker 5-card hand; balance, bet and the one deck
+    // of this game live in the session
     private List<Card> currentHand;
-    private List<Card> tempHand;
-    private int balance;
-    private int bet;
-    private int[] value;
+    private final GameSession session;
 
     /**
      * default constructor, set balance = startingBalance
@@ -70,232 +58,97 @@ public class MyPokerGame {
      * @param balance
      */
     public MyPokerGame(int balance) {
-        this.balance = balance;
+        this(balance, Paytable.JACKS_OR_BETTER);
+    }
+
+    /**
+     * constructor, set given balance and paytable
+     */
+    MyPokerGame(int balance, Paytable paytable) {
+        this(balance, paytable, 1);
     }
 
     /**
-     * This displays the payout table based on multipliers and goodHandTypes arrays
+     * constructor, set given balance, paytable and number of hands played
+     * with the same held cards (Triple Play, Ten Play, ...)
+     */
+    MyPokerGame(int balance, Paytable paytable, int numberHands) {
+        session = new GameSession(balance, paytable, numberHands);
+    }
+
+    /**
+     * This displays the payout table of the session
      */
     private void showPayoutTable() {
         System.out.println("\n\n");
-        System.out.println("Payout Table         Multiplier   ");
-        System.out.println("=======================================");
-        int size = multipliers.length;
-        for (int i = size - 1; i >= 0; i--) {
-            System.out.println(goodHandTypes[i] + "\t|\t" + multipliers[i]);
-        }
+        System.out.print(session.paytable());
         System.out.println("\n\n");
     }
 
     /**
-     * Check currentHand using multipliers and goodHandTypes arrays.
+     * Check currentHand using the hand evaluator.
+     *
+     * @return payout category of currentHand (see HandEvaluator)
      */
-    private void checkHands() {
-
-        int[] ranks = new int[14]; // keeps track of the occurences of ranks
-        for (int i = 0; i <= 13; i++) {
-            ranks[i] = 0; // initialize
-        }
-        for (int i = 0; i <= 4; i++) {
-            // increment rank array at the index of each card's rank
-            ranks[currentHand.get(i).getRank()]++;
-        }
-
-        ////////// PAIR, 2 PAIR, 3 OF A KIND, 4 OF A KIND, FULL HOUSE //////////
-        // sameCards used to check if there is a pair, sameCards2 if 2nd pair exists
-        int sameCards = 1, sameCards2 = 1;
-
-        // largeRank & smallRank hold the ranks of the pairs of cards, e.g. J's & 10's
-        int largeRank = 0, smallRank = 0;
-
-        for (int i = 13; i >= 1; i--) {
-            if (ranks[i] > sameCards) {
-
-                if (sameCards == 1) {
-                    largeRank = i;
-                } else {
-                    sameCards2 = sameCards;
-                    smallRank = i;
-                }
-                sameCards = ranks[i];
-
-            } else if (ranks[i] > sameCards2) {
-                sameCards2 = ranks[i];
-                smallRank = i;
-            }
-        }
-
-        ////////////////////////////// FLUSH //////////////////////////////////
-        boolean flush = true; // assume there is a flush
-        for (int i = 0; i < 4; i++) {
-            if (currentHand.get(i).getSuit() != currentHand.get(i + 1).getSuit()) {
-                flush = false;
-            }
-        }
-
-        ///////////////////////////// STRAIGHT ////////////////////////////////
-        boolean straight = false;
-        int topStraightValue = 0; // used to hold highest rank if there is a straight
-
-        for (int i = 1; i <= 9; i++) { // can't have straight with lowest value > 10
-            // there is 1 card for 5 sequential ranks
-            if (ranks[i] == 1 && ranks[i + 1] == 1 && ranks[i + 2] == 1 && ranks[i + 3] == 1 && ranks[i + 4] == 1) {
-                straight = true;
-                topStraightValue = i + 4; // 4 above bottom value
-                break;
-            }
-        }
-        // ace high straight
-        if (ranks[10] == 1 && ranks[11] == 1 && ranks[12] == 1 && ranks[13] == 1 && ranks[1] == 1) {
-            straight = true;
-            topStraightValue = 14; // higher than king
-        }
-
-        ///////////////////////////////////////////////////////////////////////
-        // otherRanks holds ranks of cards, including kickers
-        int[] otherRanks = new int[5];
-        int index = 0;
-
-        if (ranks[1] == 1) {        // if ace, run this before because ace is highest card
-            otherRanks[index] = 14; // record an ace as 14 instead of 1
-            index++;
-        }
-        for (int i = 13; i >= 2; i--) { // ranks excluding ace
-            if (ranks[i] == 1) {
-                otherRanks[index] = i;
-                index++;
-            }
-        }
-
-        /* DETERMINE HAND RANKINGS */
-        // value[0] contains the type of hand, from worst to best
-        //      1-high card, 2-one pair, 3-two pair, 4-three of a kind, 5-straight
-        //      6-flush, 7-full house, 8-four of a kind, 9-straight flush
-        // value[1 to 5] contain the card value from highest to lowest
-        value = new int[3]; // value holds the value of each card in hand
-        //value = new int[6];
-
-        if (sameCards == 1) { // if no pair
-            value[0] = 1;
-
-            //values[1] = otherRanks[0]; // highest rank
-            //values[2] = otherRanks[1]; // kickers...
-            //values[3] = otherRanks[2];
-            //values[4] = otherRanks[3];
-            //values[5] = otherRanks[4];
-        }
-        if (sameCards == 2 && sameCards2 == 1) { // if 1 pair
-            value[0] = 2;
-            value[1] = largeRank; // rank of pair
-
-            //values[2] = otherRanks[0]; // kickers...
-            //values[3] = otherRanks[1];
-            //values[4] = otherRanks[2];
-        }
-        if (sameCards == 2 && sameCards2 == 2) { // if two pair
-            value[0] = 3;
-            value[1] = (largeRank > smallRank) ? largeRank : smallRank; // rank of larger pair
-            value[2] = (largeRank < smallRank) ? largeRank : smallRank; // rank of smaller pair
-
-            //values[3] = otherRanks[0]; // kicker
-        }
-        if (sameCards == 3 && sameCards2 != 2) { // if 3 of a kind, not full house
-            value[0] = 4;
-            value[1] = largeRank; // rank of 3 of a kind
-
-            //values[2] = otherRanks[0]; // kickers...
-            //values[3] = otherRanks[1];
-        }
-        if (straight) { // if straight
-            value[0] = 5;
-            value[1] = topStraightValue; // highest rank
-        }
-        if (flush) { // if flush
-            value[0] = 6;
-            value[1] = otherRanks[0]; // highest rank
-
-            //value[2] = otherRanks[1];
-            //value[3] = otherRanks[2];
-            //value[4] = otherRanks[3];
-            //value[5] = otherRanks[4];
-        }
-        if (sameCards == 3 && sameCards2 == 2) { // if full house
-            value[0] = 7;
-            value[1] = largeRank; // higher rank
-            value[2] = smallRank; // lower rank
-        }
-        if (sameCards == 4) { // if 4 of a kind
-            value[0] = 8;
-            value[1] = largeRank; // rank of 4 of a kind
-
-            //value[2] = otherRanks[0];
-        }
-        if (straight && flush) { // straight + flush = straight flush
-            value[0] = 9;
-            value[1] = topStraightValue; // highest rank
-        }
-
-        display(); // displays hands
+    private int checkHands() {
+        return session.paytable().evaluate(HandEvaluator.pack(currentHand));
     }
 
-    // Displays hand types
-    private void display() {
+    // Displays hand types, the session has already paid them
+    private void display(int category) {
 
-        // if A, change value from 14 back to 1 to be able to print A
-        if (value[1] == 14) {
-            value[1] = 1;
-        }
+        // rank of the pair, trips or quads, for the messages; wild cards
+        // join the largest group of natural cards
+        int rank = HandEvaluator.primaryRank(
+                WildEvaluator.naturals(HandEvaluator.pack(currentHand), session.paytable().wild()));
+        String name = session.paytable().name(category);
 
         String s;
-        // value[0] contains type of hand
-        switch (value[0]) {
-            case 1: // high card (not a winning rank)
+        switch (category) {
+            case HandEvaluator.NO_PAIR: // high card (not a winning rank)
                 s = "\n\t" + "No pair" + "\n\t" + "Sorry, you lost!";
                 break;
-            case 2: // 1 pair
-                if (value[1] == 1 || value[1] == 11 || value[1] == 12 || value[1] == 13) { // royal pair
-                    s = "\n\t" + "Pair of " + Card.Rank[value[1]] + "'s"
-                            + "\n\t" + goodHandTypes[0] + "!";
-                    balance += bet;
-                } else {
-                    s = "\n\t" + "Pair of " + Card.Rank[value[1]] + "'s"
-                            + "\n\t" + "Sorry, you lost!";
-                }
+            case HandEvaluator.LOW_PAIR: // pair below jacks
+                s = "\n\t" + "Pair of " + Card.Rank[rank] + "'s"
+                        + "\n\t" + "Sorry, you lost!";
                 break;
-            case 3: // 2 pair
-                s = "\n\t" + goodHandTypes[1] + "!";
-                balance += (bet * 2);
+            case HandEvaluator.HIGH_PAIR: // royal pair
+                s = "\n\t" + "Pair of " + Card.Rank[rank] + "'s"
+                        + "\n\t" + name + "!";
                 break;
-            case 4: // 3 of a kind
-                s = "\n\t" + "Three " + Card.Rank[value[1]] + "'s"
-                        + "\n\t" + goodHandTypes[2] + "!";
-                balance += (bet * 3);
+            case HandEvaluator.TWO_PAIR: // 2 pair
+                s = "\n\t" + name + "!";
                 break;
-            case 5: // straight
-                s = "\n\t" + goodHandTypes[3] + "!";
-                balance += (bet * 5);
+            case HandEvaluator.THREE_OF_A_KIND: // 3 of a kind
+                s = "\n\t" + "Three " + Card.Rank[rank] + "'s"
+                        + "\n\t" + name + "!";
                 break;
-            case 6: // flush
+            case HandEvaluator.STRAIGHT: // straight
+                s = "\n\t" + name + "!";
+                break;
+            case HandEvaluator.FLUSH: // flush
                 s = "\n\t" + "Flush!";
-                balance += (bet * 6);
                 break;
-            case 7: // full house
-                s = "\n\t" + goodHandTypes[5] + "!";
-                balance += (bet * 9);
+            case HandEvaluator.FULL_HOUSE: // full house
+                s = "\n\t" + name + "!";
                 break;
-            case 8: // 4 of a kind
-                s = "\n\t" + "Four " + Card.Rank[value[1]] + "'s"
-                        + "\n\t" + goodHandTypes[6] + "!";
-                balance += (bet * 25);
+            case HandEvaluator.FOUR_OF_A_KIND: // 4 of a kind
+                s = "\n\t" + "Four " + Card.Rank[rank] + "'s"
+                        + "\n\t" + name + "!";
                 break;
-            case 9: // straight flush
-                if (value[1] == 1) { // royal flush
-                    s = "\n\t" + goodHandTypes[8] + "!";
-                    balance += (bet * 250);
-                } else {
-                    s = "\n\t" + goodHandTypes[7] + "!";
-                    balance += (bet * 50);
-                }
+            case HandEvaluator.STRAIGHT_FLUSH: // straight flush
+                s = "\n\t" + name + "!";
+                break;
+            case HandEvaluator.ROYAL_FLUSH: // royal flush
+                s = "\n\t" + name + "!";
+                break;
+            case HandEvaluator.FIVE_OF_A_KIND: // 5 of a kind, wild games
+                s = "\n\t" + "Five " + Card.Rank[rank] + "'s"
+                        + "\n\t" + name + "!";
+                break;
+            case HandEvaluator.WILD_ROYAL_FLUSH: // royal flush with wilds
+            case HandEvaluator.FOUR_WILDS: // four deuces
+                s = "\n\t" + name + "!";
                 break;
             default:
                 s = "wut";
@@ -303,6 +156,31 @@ public class MyPokerGame {
         System.out.println(s);
     }
 
+    /**
+     * Reads the positions (1-5) of the cards to keep from one input line.
+     *
+     * @return hold mask, bit i keeping card i of currentHand; -1 if the line
+     *         holds anything but positions 1 to 5
+     */
+    private static int readHoldMask(Scanner input) {
+        Scanner stringInput = new Scanner(input.nextLine());
+        stringInput = stringInput.useDelimiter("\\s*");
+
+        int holdMask = 0;
+        while (stringInput.hasNext()) {
+            if (!stringInput.hasNextInt()) {
+                return -1;
+            }
+            String dataString = stringInput.findInLine("\\d+");
+            int dataInt = dataString.length() == 1 ? Integer.parseInt(dataString) : 0;
+            if (dataInt < 1 || dataInt > 5) {
+                return -1;
+            }
+            holdMask |= 1 << (dataInt - 1);
+        }
+        return holdMask;
+    }
+
     public void play() {
         /**
          * The main algorithm for single player poker game
@@ -322,77 +200,61 @@ public class MyPokerGame {
         showPayoutTable();
         do {
             System.out.println("----------------------------------------");
-            System.out.println("Balance: $" + balance);
+            System.out.println("Balance: $" + session.balance());
 
             Scanner input = new Scanner(System.in);
 
             // get bet
             System.out.print("Enter bet (0 > bet < balance): ");
-            bet = input.nextInt(); // read int
-            while (bet <= 0 || bet > balance) {
+            int bet = input.nextInt(); // read int
+            while (bet <= 0 || bet * session.numberHands() > session.balance()) {
                 System.out.print("Please enter valid bet: ");
                 bet = input.nextInt();
             }
             input.nextLine(); // read \n
 
-            // update balance
-            balance -= bet;
-
-            // prepare deck
-            oneDeck.reset();
-            oneDeck.shuffle();
+            session.bet(bet);
 
-            // deal cards
-            try {
-                currentHand = oneDeck.deal(numberOfCards);
-                System.out.println("Hand: " + currentHand);
-            } catch (PlayingCardException ex) {
-                System.out.println("Derp");
-            }
+            // prepare deck and deal cards
+            currentHand = session.deal().cards();
+            System.out.println("Hand: " + currentHand);
 
             // read cards to keep
             System.out.print("Enter positions (1-5) of cards to keep (e.g. 1 4 5): ");
 
-            Scanner stringInput = new Scanner(input.nextLine());
-            stringInput = stringInput.useDelimiter("\\s*");
-
-            // keep user's chosen elements in currentHand
-            Card[] tempArrayHand = new Card[currentHand.size()];
-            for (int i = 0; i < currentHand.size(); i++) {
-                tempArrayHand[i] = currentHand.get(i);
-            }
-            currentHand.removeAll(currentHand);
-            while (stringInput.hasNext()) {
-                if (stringInput.hasNextInt()) {
-                    String dataString = stringInput.findInLine("\\d+");
-                    Integer dataInt = Integer.parseInt(dataString);
-
-                    currentHand.add(tempArrayHand[dataInt - 1]);
-                }
+            int holdMask = readHoldMask(input);
+            while (holdMask < 0) {
+                System.out.print("Please enter valid positions (1-5): ");
+                holdMask = readHoldMask(input);
             }
 
             // deal again to fill remaining cards user didn't choose to keep
-            try {
-                tempHand = oneDeck.deal(numberOfCards);
-            } catch (PlayingCardException ex) {
-                System.out.println("Derp");
-            }
-            for (int i = currentHand.size(); i < 5; i++) {
-                currentHand.add(tempHand.remove(0));
-            }
-	    System.out.println();
+            currentHand = session.draw(holdMask).cards();
+            System.out.println();
             System.out.println("Hand: " + currentHand);
 
-            // check hands
-            checkHands();
+            // check hands, pay
+            GameSession.Round round = session.settle();
+            display(round.category());
             System.out.println();
 
+            // the other hands of a multi-hand game, paying ones only
+            for (int h = 1; h < round.hands(); h++) {
+                if (session.paytable().payout(round.category(h)) > 0) {
+                    System.out.println("Hand " + (h + 1) + ": " + session.paytable().name(round.category(h)));
+                }
+            }
+            if (round.hands() > 1) {
+                System.out.println("Total won: $" + round.payout());
+                System.out.println();
+            }
+
             // show new balance
-            System.out.println("Your balance: $" + balance);
+            System.out.println("Your balance: $" + round.balance());
 
-            if (balance == 0) {
+            if (round.balance() == 0) {
                 System.out.println("We have enjoyed taking all of your money. Bye! :D");
-                System.exit(0);
+                return;
             }
 
             // play again?
@@ -442,78 +304,78 @@ public class MyPokerGame {
             currentHand = new ArrayList<Card>();
 
             // set Royal Flush
-            currentHand.add(new Card(1, 3));
-            currentHand.add(new Card(10, 3));
-            currentHand.add(new Card(12, 3));
-            currentHand.add(new Card(11, 3));
-            currentHand.add(new Card(13, 3));
+            currentHand.add(Card.of(1, 3));
+            currentHand.add(Card.of(10, 3));
+            currentHand.add(Card.of(12, 3));
+            currentHand.add(Card.of(11, 3));
+            currentHand.add(Card.of(13, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Straight Flush
-            currentHand.set(0, new Card(9, 3));
+            currentHand.set(0, Card.of(9, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Straight
-            currentHand.set(4, new Card(8, 1));
+            currentHand.set(4, Card.of(8, 1));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Flush
-            currentHand.set(4, new Card(5, 3));
+            currentHand.set(4, Card.of(5, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Four of a Kind
             currentHand.clear();
-            currentHand.add(new Card(8, 3));
-            currentHand.add(new Card(8, 0));
-            currentHand.add(new Card(12, 3));
-            currentHand.add(new Card(8, 1));
-            currentHand.add(new Card(8, 2));
+            currentHand.add(Card.of(8, 3));
+            currentHand.add(Card.of(8, 0));
+            currentHand.add(Card.of(12, 3));
+            currentHand.add(Card.of(8, 1));
+            currentHand.add(Card.of(8, 2));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Three of a Kind
-            currentHand.set(4, new Card(11, 3));
+            currentHand.set(4, Card.of(11, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Full House
-            currentHand.set(2, new Card(11, 1));
+            currentHand.set(2, Card.of(11, 1));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Two Pairs
-            currentHand.set(1, new Card(9, 1));
+            currentHand.set(1, Card.of(9, 1));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // set Royal Pair
-            currentHand.set(0, new Card(3, 1));
+            currentHand.set(0, Card.of(3, 1));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // non Royal Pair
-            currentHand.set(2, new Card(3, 3));
+            currentHand.set(2, Card.of(3, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
             // no pair
-            currentHand.set(2, new Card(1, 3));
+            currentHand.set(2, Card.of(1, 3));
             System.out.println(currentHand);
-            checkHands();
+            display(checkHands());
             System.out.println("-----------------------------------");
 
         } catch (Exception e) {
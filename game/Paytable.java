@@ -0,0 +1,310 @@
+package game;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * class Paytable (immutable): what each final hand pays, per unit bet
+ *
+ * A paytable pays by HandEvaluator category, except Four of a Kind, which is
+ * looked up by the rank of the quads and the rank of the kicker so that bonus
+ * games can pay Four Aces or Four 2-4 with a low kicker more. It also names
+ * the game's wild cards, if any, which decide how hands are evaluated and
+ * whether the deck has a joker. Two paytables with the same game and payouts
+ * are equal, whatever their names.
+ *
+ * Every paytable has a fixed id, which journals and snapshots store to name
+ * the game played: an id must never be given to other payouts once records
+ * with it exist. Readers look stored ids up in an explicit registry of the
+ * paytables they accept (see registry()).
+ */
+final class Paytable {
+
+    /* Jacks or Better as MyPokerGame always paid it: Full House 9 and Flush
+     * 6, but Straight 5 and Royal Flush 250, so not the standard 9/6 table;
+     * it returns 99.67% with optimal play where 9/6 returns 99.54% */
+    static final Paytable JACKS_OR_BETTER = new Paytable(1, "Jacks or Better (classic)",
+            new int[]{0, 0, 1, 2, 3, 5, 6, 9, 25, 50, 250, 0, 0, 0}, null);
+
+    /* 8/5 Bonus Poker: Four Aces 80, Four 2-4 40, Four 5-K 25 */
+    static final Paytable BONUS_POKER = new Paytable(2, "Bonus Poker 8/5",
+            new int[]{0, 0, 1, 2, 3, 4, 5, 8, 25, 50, 800, 0, 0, 0},
+            quads(80, 80, 40, 40, 25));
+
+    /* 9/6 Double Double Bonus: Four Aces 160 (400 with a 2-4 kicker),
+     * Four 2-4 80 (160 with an A-4 kicker), Four 5-K 50 */
+    static final Paytable DOUBLE_DOUBLE_BONUS = new Paytable(3, "Double Double Bonus 9/6",
+            new int[]{0, 0, 1, 1, 3, 4, 6, 9, 50, 50, 800, 0, 0, 0},
+            quads(400, 160, 160, 80, 50));
+
+    /* full pay Deuces Wild: Four Deuces 200, Wild Royal 25, Five of a Kind 15 */
+    static final Paytable DEUCES_WILD = new Paytable(4, "Deuces Wild", WildEvaluator.DEUCES,
+            new int[]{0, 0, 0, 0, 1, 2, 2, 3, 5, 9, 800, 15, 25, 200}, null);
+
+    /* Joker Poker, Kings or Better: Five of a Kind 200, Wild Royal 100 */
+    static final Paytable JOKER_POKER = new Paytable(5, "Joker Poker", WildEvaluator.JOKER,
+            new int[]{0, 0, 1, 1, 2, 3, 5, 7, 20, 50, 800, 200, 100, 0}, null);
+
+    /* default names of the categories */
+    private static final String[] categoryNames = {
+        "No Pair", "Low Pair", "Royal Pair", "Two Pair", "Three of a Kind", "Straight", "Flush",
+        "Full House", "Four of a Kind", "Straight Flush", "Royal Flush",
+        "Five of a Kind", "Wild Royal Flush", "Four Deuces"};
+
+    private final int id;
+    private final String name;
+    private final int wild;      /* WildEvaluator game constant */
+    private final int[] payouts; /* per HandEvaluator category */
+    private final int[] quads;   /* per quad rank index * 13 + kicker rank index */
+    private final boolean quadBonus;
+
+    /**
+     * Creates a paytable.
+     *
+     * @param id      fixed id of the game, 1 or more
+     * @param name    name shown to players
+     * @param payouts payout per HandEvaluator category
+     * @param quads   Four of a Kind payout per quad rank index (rank - 1) * 13
+     *                + kicker rank index, or null to pay
+     *                payouts[FOUR_OF_A_KIND] for all quads
+     */
+    Paytable(int id, String name, int[] payouts, int[] quads) {
+        this(id, name, WildEvaluator.NONE, payouts, quads);
+    }
+
+    /**
+     * Creates a paytable of a wild-card game.
+     *
+     * @param wild WildEvaluator.NONE, DEUCES or JOKER
+     * @param quads kicker table as above; must be null for wild games
+     */
+    Paytable(int id, String name, int wild, int[] payouts, int[] quads) {
+        if (id < 1) {
+            throw new IllegalArgumentException("Invalid paytable id: " + id);
+        }
+        if (payouts.length != HandEvaluator.CATEGORIES) {
+            throw new IllegalArgumentException("Need one payout per category: " + payouts.length);
+        }
+        if (wild != WildEvaluator.NONE && quads != null) {
+            throw new IllegalArgumentException("Wild games cannot pay quads by kicker");
+        }
+        this.id = id;
+        this.name = name;
+        this.wild = wild;
+        this.payouts = payouts.clone();
+        if (quads == null) {
+            this.quads = new int[13 * 13];
+            Arrays.fill(this.quads, payouts[HandEvaluator.FOUR_OF_A_KIND]);
+        } else {
+            this.quads = quads.clone();
+        }
+        boolean bonus = false;
+        for (int payout : this.quads) {
+            bonus |= payout != this.quads[0];
+        }
+        this.quadBonus = bonus;
+    }
+
+    /*
+     * Builds a quads table for the bonus games: aces with a 2-4 kicker, other
+     * aces, 2-4 with an A-4 kicker, other 2-4, and 5-K.
+     */
+    private static int[] quads(int acesLowKicker, int aces, int lowLowKicker, int low, int other) {
+        int[] quads = new int[13 * 13];
+        for (int quad = 0; quad < 13; quad++) {
+            for (int kicker = 0; kicker < 13; kicker++) {
+                int payout;
+                if (quad == 0) {
+                    payout = (kicker >= 1 && kicker <= 3) ? acesLowKicker : aces;
+                } else if (quad <= 3) {
+                    payout = kicker <= 3 ? lowLowKicker : low;
+                } else {
+                    payout = other;
+                }
+                quads[quad * 13 + kicker] = payout;
+            }
+        }
+        return quads;
+    }
+
+    /* fixed id of the game, as stored in journals and snapshots */
+    int id() {
+        return id;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Returns the paytables a journal or snapshot reader accepts, by id.
+     *
+     * @throws IllegalArgumentException if two different paytables have the
+     *                                  same id
+     */
+    static Map<Integer, Paytable> registry(Paytable... paytables) {
+        Map<Integer, Paytable> registry = new HashMap<>();
+        for (Paytable paytable : paytables) {
+            Paytable other = registry.putIfAbsent(paytable.id, paytable);
+            if (other != null && !other.equals(paytable)) {
+                throw new IllegalArgumentException("Paytables " + other.name + " and " + paytable.name
+                        + " have the same id " + paytable.id);
+            }
+        }
+        return registry;
+    }
+
+    /* name of a category, e.g. "Full House" */
+    String name(int category) {
+        if (category == HandEvaluator.HIGH_PAIR && wild == WildEvaluator.JOKER) {
+            return "Kings or Better";
+        }
+        return categoryNames[category];
+    }
+
+    /* WildEvaluator game constant */
+    int wild() {
+        return wild;
+    }
+
+    /* number of jokers in the deck */
+    int jokers() {
+        return wild == WildEvaluator.JOKER ? 1 : 0;
+    }
+
+    /* number of different cards in the deck */
+    int cards() {
+        return Card.CARDS + jokers();
+    }
+
+    /**
+     * Classifies a packed 5-card hand by the rules of this game.
+     *
+     * @return a category constant of HandEvaluator
+     */
+    int evaluate(long hand) {
+        switch (wild) {
+            case WildEvaluator.DEUCES:
+                return WildEvaluator.evaluateDeucesWild(hand);
+            case WildEvaluator.JOKER:
+                return WildEvaluator.evaluateJokerPoker(hand);
+            default:
+                return HandEvaluator.evaluate(hand);
+        }
+    }
+
+    /**
+     * Returns the categories this game can make, best paid first; equal
+     * payouts keep the stronger category first.
+     */
+    int[] ranking() {
+        int natural = HandEvaluator.ROYAL_FLUSH + 1;
+        int size = wild == WildEvaluator.NONE ? natural
+                : wild == WildEvaluator.JOKER ? natural + 2 : HandEvaluator.CATEGORIES;
+        Integer[] order = new Integer[size];
+        for (int category = 0; category < size; category++) {
+            order[category] = category;
+        }
+        Arrays.sort(order, (a, b) -> payout(a) != payout(b)
+                ? Integer.compare(payout(b), payout(a)) : Integer.compare(b, a));
+        int[] ranking = new int[size];
+        for (int i = 0; i < size; i++) {
+            ranking[i] = order[i];
+        }
+        return ranking;
+    }
+
+    /* payout of a category; for Four of a Kind the lowest quads payout */
+    int payout(int category) {
+        if (category == HandEvaluator.FOUR_OF_A_KIND) {
+            int lowest = Integer.MAX_VALUE;
+            for (int payout : quads) {
+                lowest = Math.min(lowest, payout);
+            }
+            return lowest;
+        }
+        return payouts[category];
+    }
+
+    /**
+     * Returns the payout of a packed 5-card hand of a known category.
+     */
+    int payout(long hand, int category) {
+        if (category != HandEvaluator.FOUR_OF_A_KIND || !quadBonus) {
+            return payouts[category];
+        }
+        int c = (int) hand & HandEvaluator.RANK_MASK;
+        int d = (int) (hand >>> 16) & HandEvaluator.RANK_MASK;
+        int h = (int) (hand >>> 32) & HandEvaluator.RANK_MASK;
+        int s = (int) (hand >>> 48) & HandEvaluator.RANK_MASK;
+        int quad = c & d & h & s;
+        int kicker = (c | d | h | s) ^ quad;
+        return quads[Integer.numberOfTrailingZeros(quad) * 13 + Integer.numberOfTrailingZeros(kicker)];
+    }
+
+    /**
+     * Returns the payout of a packed 5-card hand.
+     */
+    int payout(long hand) {
+        return payout(hand, evaluate(hand));
+    }
+
+    /* true if some quads pay more than others */
+    boolean hasQuadBonus() {
+        return quadBonus;
+    }
+
+    /**
+     * Returns the game and all payouts as one array: the wild game constant,
+     * the category payouts and the quads table. Two paytables are equal when
+     * these arrays are.
+     */
+    int[] toArray() {
+        int[] all = new int[1 + payouts.length + quads.length];
+        all[0] = wild;
+        System.arraycopy(payouts, 0, all, 1, payouts.length);
+        System.arraycopy(quads, 0, all, 1 + payouts.length, quads.length);
+        return all;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Paytable
+                && wild == ((Paytable) other).wild
+                && Arrays.equals(payouts, ((Paytable) other).payouts)
+                && Arrays.equals(quads, ((Paytable) other).quads);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * wild + Arrays.hashCode(payouts)) * 31 + Arrays.hashCode(quads);
+    }
+
+    /**
+     * Returns the payout table as shown to players, best hand first.
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(name).append('\n');
+        s.append("Payout Table         Multiplier   \n");
+        s.append("=======================================\n");
+        for (int category : ranking()) {
+            if (category == HandEvaluator.FOUR_OF_A_KIND && quadBonus) {
+                s.append(String.format("%-16s\t|\t%d%n", "Four Aces", quads[0]));
+                if (quads[1] != quads[0]) {
+                    s.append(String.format("%-16s\t|\t%d%n", "  with 2-4", quads[1]));
+                }
+                s.append(String.format("%-16s\t|\t%d%n", "Four 2-4", quads[13 + 4]));
+                if (quads[13] != quads[13 + 4]) {
+                    s.append(String.format("%-16s\t|\t%d%n", "  with A-4", quads[13]));
+                }
+                s.append(String.format("%-16s\t|\t%d%n", "Four 5-K", quads[4 * 13]));
+            } else if (payout(category) > 0) {
+                s.append(String.format("%-16s\t|\t%d%n", name(category), payout(category)));
+            }
+        }
+        return s.toString();
+    }
+}
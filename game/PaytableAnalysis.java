@@ -0,0 +1,93 @@
+package game;
+
+/**
+ * class PaytableAnalysis (immutable): the optimal strategy of a paytable and
+ * the exact return, variance and final-hand probabilities of playing it, as
+ * worked out by ExactAnalyzer.
+ *
+ * Analyses are kept in a small shared cache: every session that plays the
+ * same paytable gets the same instance, and it is computed once even if many
+ * sessions ask at once.
+ */
+final class PaytableAnalysis {
+
+    /* each analysis holds a strategy table of about 13 MB */
+    private static final BoundedCache<Paytable, PaytableAnalysis> cache = new BoundedCache<>(4);
+
+    private final Paytable paytable;
+    private final Strategy strategy;
+    private final double rtp;
+    private final double variance;
+    private final double[] probabilities;
+
+    PaytableAnalysis(Paytable paytable, Strategy strategy, double rtp, double variance, double[] probabilities) {
+        this.paytable = paytable;
+        this.strategy = strategy;
+        this.rtp = rtp;
+        this.variance = variance;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Returns the analysis of a paytable, solving it on first use. Joker
+     * games play the ExactAnalyzer itself instead of a strategy table.
+     */
+    static PaytableAnalysis of(Paytable paytable) {
+        return cache.get(paytable, p -> ExactAnalyzer.of(p).analysis());
+    }
+
+    /**
+     * Plays every starting hand with a strategy and sums the exact outcomes
+     * of its holds, on the common fork-join pool.
+     */
+    static PaytableAnalysis analyse(Paytable paytable, Strategy strategy) {
+        return ExactAnalyzer.of(paytable).analysis(strategy);
+    }
+
+    Paytable paytable() {
+        return paytable;
+    }
+
+    /* the strategy the figures are for */
+    Strategy strategy() {
+        return strategy;
+    }
+
+    /* average return per unit bet */
+    double rtp() {
+        return rtp;
+    }
+
+    /* variance of the return per unit bet of one hand */
+    double variance() {
+        return variance;
+    }
+
+    /* probability that the final hand is in a HandEvaluator category */
+    double probability(int category) {
+        return probabilities[category];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(paytable.name()).append('\n');
+        for (int category : paytable.ranking()) {
+            s.append(String.format("%-16s\t|\t%.8f%n", paytable.name(category), probabilities[category]));
+        }
+        s.append(String.format("RTP: %.6f, variance: %.4f", rtp, variance));
+        return s.toString();
+    }
+
+    /* Quick test: analyse the optimal strategy of a paytable, then a simple
+     * strategy against it */
+    public static void main(String args[]) {
+        Paytable paytable = Paytable.JACKS_OR_BETTER;
+        long start = System.nanoTime();
+        PaytableAnalysis analysis = of(paytable);
+        System.out.println(analysis);
+        System.out.println("Analysed in " + (System.nanoTime() - start) / 1000000 + " ms, cached: "
+                + (of(paytable) == analysis));
+        System.out.println(analyse(paytable, Strategy.KEEP_PAYING));
+    }
+}
@@ -21,6 +21,13 @@ class PlayingCardException extends Exception {
  * class Card (immutable): for creating playing card objects
  * Rank - valid values are 1 to 13
  * Suit - valid values are 0 to 3
+ *
+ * There are only 52 Card objects, created once and shared (see of() and
+ * get()). Inside the engine a card is its index 0-51 = suit * 13 + rank - 1,
+ * and bit() gives its bit in the packed hand encoding of HandEvaluator.
+ *
+ * Joker games add one more card, the joker: index JOKER, rank 0 and suit -1.
+ * Its hand bit lies outside every rank lane, so only WildEvaluator sees it.
  */
 class Card {
 
@@ -28,23 +35,71 @@ class Card {
     static final String[] Suit = {"Clubs", "Diamonds", "Hearts", "Spades"};
     static final String[] Rank = {"", "A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K"};
 
+    /* number of different cards, not counting the joker */
+    static final int CARDS = 52;
+
+    /* index of the joker */
+    static final int JOKER = CARDS;
+
+    /* canonical instances, names and hand bits by card index */
+    private static final Card[] cards = new Card[CARDS + 1];
+    private static final String[] names = new String[CARDS + 1];
+    private static final long[] bits = new long[CARDS + 1];
+
+    static {
+        for (int index = 0; index < CARDS; index++) {
+            int rank = index % 13 + 1;
+            int suit = index / 13;
+            names[index] = Rank[rank] + " " + Suit[suit];
+            bits[index] = HandEvaluator.bit(rank, suit);
+            cards[index] = new Card(rank, suit, index);
+        }
+        names[JOKER] = "Joker";
+        bits[JOKER] = 1L << 13;
+        cards[JOKER] = new Card(0, -1, JOKER);
+    }
+
     /* Data fields of a card: rank and suit */
-    private int cardRank; /* values: 1-13 (see Rank[] above) */
-    private int cardSuit; /* values: 0-3  (see Suit[] above) */
+    private final int cardRank;  /* values: 1-13 (see Rank[] above), joker 0 */
+    private final int cardSuit;  /* values: 0-3  (see Suit[] above), joker -1 */
+    private final int cardIndex; /* values: 0-51, joker JOKER */
+
+    private Card(int rank, int suit, int index) {
+        cardRank = rank;
+        cardSuit = suit;
+        cardIndex = index;
+    }
 
-    /* Constructor to create a card */
+    /* Returns the card of a rank and suit */
     /* throw PlayingCardException if rank or suit is invalid */
-    public Card(int rank, int suit) throws PlayingCardException {
+    public static Card of(int rank, int suit) throws PlayingCardException {
         if ((rank < 1) || (rank > 13)) {
             throw new PlayingCardException("Invalid rank:" + rank);
-        } else {
-            cardRank = rank;
         }
         if ((suit < 0) || (suit > 3)) {
             throw new PlayingCardException("Invalid suit:" + suit);
-        } else {
-            cardSuit = suit;
         }
+        return cards[index(rank, suit)];
+    }
+
+    /* Returns the joker */
+    static Card joker() {
+        return cards[JOKER];
+    }
+
+    /* Returns the card of an index 0-52, unchecked */
+    static Card get(int index) {
+        return cards[index];
+    }
+
+    /* Returns the index 0-51 of a rank and suit, unchecked */
+    static int index(int rank, int suit) {
+        return suit * 13 + rank - 1;
+    }
+
+    /* Returns the hand bit of a card index 0-52, unchecked */
+    static long bit(int index) {
+        return bits[index];
     }
 
     /* Accessors */
@@ -56,20 +111,25 @@ class Card {
         return cardSuit;
     }
 
+    public int getIndex() {
+        return cardIndex;
+    }
+
     /* toString method */
     @Override
     public String toString() {
-        return Rank[cardRank] + " " + Suit[cardSuit];
+        return names[cardIndex];
     }
 
     // A few quick tests here
     public static void main(String args[]) {
         try {
-            Card c1 = new Card(1, 3); // A Spades
-            System.out.println(c1);
-            c1 = new Card(10, 0);     // 10 Clubs
+            Card c1 = Card.of(1, 3); // A Spades
             System.out.println(c1);
-            c1 = new Card(10, 5);     // generate exception here
+            c1 = Card.of(10, 0);     // 10 Clubs
+            System.out.println(c1 + " same object: " + (c1 == Card.get(9)));
+            System.out.println(Card.joker() + " is card " + Card.get(JOKER).getIndex());
+            c1 = Card.of(10, 5);     // generate exception here
         } catch (PlayingCardException e) {
             System.out.println("PlayingCardException: " + e.getMessage());
         }
@@ -77,68 +137,140 @@ class Card {
 }
 
 /**
- * class Decks represents n decks of 52 playing cards
+ * class Decks represents n decks of 52 playing cards, each with an optional
+ * number of jokers
+ *
+ * Cards are kept as card indices (see Card) in one int array that always
+ * holds a permutation of all the cards. Dealing moves a cursor, so reset()
+ * only moves it back. shuffle() does not touch the array: after it, each card
+ * is picked when it is dealt (incremental Fisher-Yates), so a round that uses
+ * 10 cards costs 10 random numbers whether the shoe has 1 deck or 8.
+ *
+ * Every deck draws from its own DeckRandom, so decks never contend for a
+ * generator, and a deck built with a seeded generator deals the same cards
+ * for the same calls. A deck attached to a DeckPool instead copies a
+ * pre-shuffled permutation when it is shuffled full, and falls back to its
+ * own generator when the pool has none ready.
  */
 class Decks {
 
-    /* this is used to keep track of original n*52 cards */
-    private List<Card> originalDecks;
+    /* permutation of all cards; cards[top] to the end remain to deal */
+    private final int[] dealDecks;
+    private int top;
 
-    /* this starts with n*52 cards deck from original deck */
-    /* it is used to keep track of remaining cards to deal */
-    /* see reset(): it resets dealDecks to a full deck     */
-    private List<Card> dealDecks;
+    /* true if the remaining cards are to be dealt in random order */
+    private boolean shuffled;
+
+    /* random stream of this deck only */
+    private final DeckRandom random;
 
     /* number of decks in this object */
-    private int numberDecks;
+    private final int numberDecks;
+
+    /* source of pre-shuffled permutations, or null */
+    private DeckPool pool;
+
+    /* scratch of dealCopies(): random offsets and swap positions to undo */
+    private int[] randoms = new int[0];
+    private int[] swaps = new int[0];
+
+    /* scratch of seeded dealCopies(): remaining cards by index, their
+     * counts and the generator started from the seed */
+    private int[] ordered = new int[0];
+    private int[] counts;
+    private Xoshiro256 seeded;
 
     /**
-     * Constructor: Creates default one deck of 52 playing cards in
-     * originalDecks and copies them to dealDecks.
+     * Constructor: Creates default one deck of 52 playing cards.
      */
     public Decks() {
         this(1);
     }
 
     /**
-     * Constructor: Creates n decks (52 cards each deck) of playing cards in
-     * originalDecks and copies them to dealDecks.
+     * Constructor: Creates n decks (52 cards each deck) of playing cards,
+     * suit by suit, A to K.
      */
     public Decks(int n) {
+        this(n, DeckRandom.splittable());
+    }
+
+    /**
+     * Constructor: Creates n decks of playing cards that shuffle with the
+     * given random stream, which must not be shared.
+     */
+    public Decks(int n, SplittableRandom random) {
+        this(n, 0, DeckRandom.of(random));
+    }
+
+    /**
+     * Constructor: Creates n decks of playing cards that shuffle with the
+     * given generator, which must not be shared.
+     */
+    Decks(int n, DeckRandom random) {
+        this(n, 0, random);
+    }
+
+    /**
+     * Constructor: Creates n decks of playing cards with the given number of
+     * jokers in each deck (52 + jokers cards each deck).
+     */
+    public Decks(int n, int jokers, SplittableRandom random) {
+        this(n, jokers, DeckRandom.of(random));
+    }
+
+    /**
+     * Constructor: Creates n decks of playing cards with the given number of
+     * jokers in each deck, shuffled with the given generator.
+     */
+    Decks(int n, int jokers, DeckRandom random) {
         numberDecks = n;
-        originalDecks = new ArrayList<>(n);
-        dealDecks = new ArrayList<>(n);
-
-        // putting cards into originalDecks
-        for (int i = 0; i < numberDecks; i++) {
-            int rank = 1;
-            int suit = -1;
-
-            for (int j = 0; j < 52; j++) {
-                if (j % 13 == 0) {
-                    suit++;
-                    rank = 1;
-                }
-                try {
-                    originalDecks.add(new Card(rank, suit));
-                } catch (PlayingCardException ex) {
-                    System.out.println("Error in method Decks(int n)");
-                }
-                rank++;
-            }
+        this.random = random;
+        int deckSize = Card.CARDS + jokers;
+        dealDecks = new int[n * deckSize];
+        for (int i = 0; i < dealDecks.length; i++) {
+            dealDecks[i] = Math.min(i % deckSize, Card.JOKER);
         }
+    }
 
-        // copy cards from originalDecks into dealDecks
-        for (Card originalDeck : originalDecks) {
-            dealDecks.add(originalDeck);
+    /**
+     * Takes shuffled decks from a pool whose permutations have as many cards
+     * as this deck.
+     *
+     * @return this deck
+     */
+    Decks pool(DeckPool pool) {
+        if (pool != null && pool.cards() != dealDecks.length) {
+            throw new IllegalArgumentException("Pool of " + pool.cards() + " cards for a deck of "
+                    + dealDecks.length);
         }
+        this.pool = pool;
+        return this;
     }
 
     /**
-     * Shuffles cards in deal deck.
+     * Shuffles cards in deal deck. The order of each remaining card is drawn
+     * when the card is dealt, unless no card was dealt since reset() and the
+     * pool has a pre-shuffled deck ready.
      */
     public void shuffle() {
-        Collections.shuffle(dealDecks);
+        if (top == 0 && pool != null && pool.take(dealDecks)) {
+            shuffled = false;
+            return;
+        }
+        shuffled = true;
+    }
+
+    /* deals the next card, choosing it now if the deck is shuffled */
+    private int next() {
+        int i = top++;
+        if (shuffled) {
+            int j = i + random.nextInt(dealDecks.length - i);
+            int card = dealDecks[j];
+            dealDecks[j] = dealDecks[i];
+            dealDecks[i] = card;
+        }
+        return dealDecks[i];
     }
 
     /**
@@ -156,36 +288,219 @@ class Decks {
 
         // add selected number of cards to dealtCards from dealDecks
         List<Card> dealtCards = new ArrayList<>(numberCards);
-        for (int i = 0; numberCards > 0; numberCards--) {
-            dealtCards.add(dealDecks.remove(i));
+        for (; numberCards > 0; numberCards--) {
+            dealtCards.add(Card.get(next()));
         }
 
         return dealtCards;
     }
 
     /**
-     * Resets deal deck by getting all cards from the original deck.
+     * Deals card indices from the deal deck into an array, without creating
+     * any objects.
+     *
+     * @param cards       receives the card indices
+     * @param offset      position in cards of the first dealt card
+     * @param numberCards number of cards to deal
+     * @throws PlayingCardException if numberCards > number of remaining cards
+     */
+    public void deal(int[] cards, int offset, int numberCards) throws PlayingCardException {
+        if (numberCards > remain()) {
+            throw new PlayingCardException("Not enough cards to deal");
+        }
+        for (int i = 0; i < numberCards; i++) {
+            cards[offset + i] = next();
+        }
+    }
+
+    /**
+     * Deals one card index from the deal deck.
+     *
+     * @throws PlayingCardException if no card remains
+     */
+    int dealCard() throws PlayingCardException {
+        if (top == dealDecks.length) {
+            throw new PlayingCardException("Not enough cards to deal");
+        }
+        return next();
+    }
+
+    /**
+     * Deals the same number of cards to each of several independent copies of
+     * the remaining cards, as if every copy were shuffled on its own. The
+     * deck itself is left as it was. Used by multi-hand games, where every
+     * hand draws from its own copy of the deck.
+     *
+     * @param cards       receives copies * numberCards card indices, copy c
+     *                    at offset c * numberCards
+     * @param numberCards number of cards to deal to each copy
+     * @param copies      number of copies
+     * @throws PlayingCardException if numberCards > number of remaining cards
+     */
+    public void dealCopies(int[] cards, int numberCards, int copies) throws PlayingCardException {
+        if (numberCards > remain()) {
+            throw new PlayingCardException("Not enough cards to deal");
+        }
+        dealCopies(random, dealDecks, top, dealDecks.length, cards, numberCards, copies);
+    }
+
+    /**
+     * Deals copies as dealCopies(cards, numberCards, copies) does, but from
+     * the remaining cards in order of card index and with a generator started
+     * from seed: the same remaining cards and seed deal the same copies,
+     * whatever order the deck is in. A round can so be dealt again after a
+     * restart (see GameSession.restore).
+     *
+     * @param seed e.g. from seed()
+     * @throws PlayingCardException if numberCards > number of remaining cards
+     */
+    void dealCopies(int[] cards, int numberCards, int copies, long seed) throws PlayingCardException {
+        if (numberCards > remain()) {
+            throw new PlayingCardException("Not enough cards to deal");
+        }
+        int remain = remain();
+        if (ordered.length < remain) {
+            ordered = new int[remain];
+        }
+        if (counts == null) {
+            counts = new int[Card.JOKER + 1];
+            seeded = new Xoshiro256(seed);
+        } else {
+            Arrays.fill(counts, 0);
+            seeded.seed(seed);
+        }
+
+        // counting sort of the remaining cards
+        for (int i = top; i < dealDecks.length; i++) {
+            counts[dealDecks[i]]++;
+        }
+        for (int card = 0, k = 0; card < counts.length; card++) {
+            for (int n = counts[card]; n > 0; n--) {
+                ordered[k++] = card;
+            }
+        }
+        dealCopies(seeded, ordered, 0, remain, cards, numberCards, copies);
+    }
+
+    /**
+     * Returns a seed for dealCopies(cards, numberCards, copies, seed), drawn
+     * from this deck's generator.
+     */
+    long seed() {
+        return random.nextLong();
+    }
+
+    /* deals copies from deck[from] to deck[end - 1], which is left as it was */
+    private void dealCopies(DeckRandom generator, int[] deck, int from, int end, int[] cards, int numberCards,
+            int copies) {
+        int total = numberCards * copies;
+        if (randoms.length < total) {
+            randoms = new int[total];
+        }
+        if (swaps.length < numberCards) {
+            swaps = new int[numberCards];
+        }
+
+        // all random offsets of the batch first
+        generator.fillIndices(randoms, 0, end - from, numberCards, copies);
+
+        // partial Fisher-Yates over the remaining cards, undone after each copy
+        for (int c = 0, r = 0; c < copies; c++) {
+            int offset = c * numberCards;
+            for (int i = 0; i < numberCards; i++) {
+                int j = from + i + randoms[r++];
+                swaps[i] = j;
+                int card = deck[j];
+                deck[j] = deck[from + i];
+                deck[from + i] = card;
+                cards[offset + i] = card;
+            }
+            for (int i = numberCards - 1; i >= 0; i--) {
+                int j = swaps[i];
+                int card = deck[j];
+                deck[j] = deck[from + i];
+                deck[from + i] = card;
+            }
+        }
+    }
+
+    /**
+     * Resets deal deck so that all cards remain. This does not reorder
+     * the cards: they come back in the order they were dealt, and the deck is
+     * no longer shuffled until shuffle() is called.
      */
     public void reset() {
-        dealDecks.removeAll(dealDecks);
-        for (Card originalDeck : originalDecks) {
-            dealDecks.add(originalDeck);
+        top = 0;
+        shuffled = false;
+    }
+
+    /**
+     * Puts all cards back in the order of a new deck, unshuffled. With a
+     * reseeded generator the deck then deals as a new deck from that seed.
+     */
+    void order() {
+        int deckSize = dealDecks.length / numberDecks;
+        for (int i = 0; i < dealDecks.length; i++) {
+            dealDecks[i] = Math.min(i % deckSize, Card.JOKER);
         }
+        top = 0;
+        shuffled = false;
+    }
+
+    /**
+     * Starts a new shuffled deck whose first cards were already dealt: the
+     * given ones, e.g. the hand of a round restored after a restart.
+     *
+     * @throws IllegalArgumentException if a card is not in the deck
+     */
+    void redeal(int[] cards, int numberCards) {
+        top = 0;
+        for (int i = 0; i < numberCards; i++) {
+            int j = top;
+            while (j < dealDecks.length && dealDecks[j] != cards[i]) {
+                j++;
+            }
+            if (j == dealDecks.length) {
+                throw new IllegalArgumentException("Card " + cards[i] + " is not in the deck");
+            }
+            dealDecks[j] = dealDecks[top];
+            dealDecks[top++] = cards[i];
+        }
+        shuffled = true;
     }
 
     /**
      * Returns number of remaining cards in deal deck.
      */
     public int remain() {
-        return dealDecks.size();
+        return dealDecks.length - top;
     }
 
     /**
-     * Returns a string representing cards in the deal deck
+     * Returns a string representing cards in the deal deck, in the order they
+     * will be dealt
      */
     @Override
     public String toString() {
-        return "" + dealDecks;
+        // fix the order of the remaining cards so that it can be shown
+        if (shuffled) {
+            for (int i = top; i < dealDecks.length - 1; i++) {
+                int j = i + random.nextInt(dealDecks.length - i);
+                int card = dealDecks[j];
+                dealDecks[j] = dealDecks[i];
+                dealDecks[i] = card;
+            }
+            shuffled = false;
+        }
+
+        StringBuilder s = new StringBuilder("[");
+        for (int i = top; i < dealDecks.length; i++) {
+            if (i > top) {
+                s.append(", ");
+            }
+            s.append(Card.get(dealDecks[i]));
+        }
+        return s.append(']').toString();
     }
 
     /* Quick test
@@ -0,0 +1,202 @@
+package game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * class Simulator plays video poker hands headless to measure the return to
+ * player of a strategy.
+ *
+ * The hands are split in halves on a fork-join pool until a slice is small
+ * enough to play on one thread; every slice gets its own DeckRandom split
+ * from its parent, so a run is reproducible for a given seed and slices never
+ * share mutable state.
+ */
+final class Simulator {
+
+    /* hands played by one leaf task */
+    private static final long SLICE = 1 << 18;
+
+    private Simulator() {
+    }
+
+    /**
+     * Plays hands on the common fork-join pool.
+     *
+     * @param hands    number of hands to play
+     * @param strategy decides which cards to keep
+     * @param paytable payouts of the final hands
+     * @param seed     seed of the root random stream
+     */
+    static Result run(long hands, Strategy strategy, Paytable paytable, long seed) {
+        return run(hands, strategy, paytable, DeckRandom.splittable(seed));
+    }
+
+    /**
+     * Plays hands on the common fork-join pool with a given root generator,
+     * which is split for every slice.
+     */
+    static Result run(long hands, Strategy strategy, Paytable paytable, DeckRandom random) {
+        Tally tally = ForkJoinPool.commonPool().invoke(new Play(hands, strategy, paytable, random));
+        return new Result(hands, tally, paytable);
+    }
+
+    /**
+     * Outcome of a simulation run (immutable).
+     */
+    static final class Result {
+
+        private final long hands;
+        private final long[] counts;
+        private final Paytable paytable;
+        private final double rtp;
+        private final double variance;
+
+        private Result(long hands, Tally tally, Paytable paytable) {
+            this.hands = hands;
+            this.counts = tally.counts.clone();
+            this.paytable = paytable;
+            rtp = (double) tally.paid / hands;
+            variance = (double) tally.squares / hands - rtp * rtp;
+        }
+
+        long hands() {
+            return hands;
+        }
+
+        /* number of final hands in a HandEvaluator category */
+        long count(int category) {
+            return counts[category];
+        }
+
+        /* fraction of final hands in a HandEvaluator category */
+        double hitFrequency(int category) {
+            return (double) counts[category] / hands;
+        }
+
+        /* average return per unit bet */
+        double rtp() {
+            return rtp;
+        }
+
+        /* variance of the return of one hand, per unit bet squared */
+        double variance() {
+            return variance;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append("Hands: ").append(hands).append('\n');
+            for (int category : paytable.ranking()) {
+                if (paytable.payout(category) > 0) {
+                    s.append(String.format("%-16s\t|\t%.8f%n",
+                            paytable.name(category), hitFrequency(category)));
+                }
+            }
+            s.append(String.format("RTP: %.6f  Variance: %.4f", rtp, variance));
+            return s.toString();
+        }
+    }
+
+    /* category counts and payout sums of a slice */
+    private static final class Tally {
+
+        final long[] counts = new long[HandEvaluator.CATEGORIES];
+        long paid;
+        long squares;
+
+        Tally add(Tally other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            paid += other.paid;
+            squares += other.squares;
+            return this;
+        }
+    }
+
+    /**
+     * Plays a number of hands, splitting while there are more than SLICE.
+     */
+    private static final class Play extends RecursiveTask<Tally> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long hands;
+        private final Strategy strategy;
+        private final Paytable paytable;
+        private final DeckRandom random;
+
+        Play(long hands, Strategy strategy, Paytable paytable, DeckRandom random) {
+            this.hands = hands;
+            this.strategy = strategy;
+            this.paytable = paytable;
+            this.random = random;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (hands > SLICE) {
+                long half = hands >>> 1;
+                Play left = new Play(half, strategy, paytable, random.split());
+                Play right = new Play(hands - half, strategy, paytable, random);
+                left.fork();
+                return right.compute().add(left.join());
+            }
+
+            Tally tally = new Tally();
+            long[] deck = new long[paytable.cards()];
+            for (int card = 0; card < deck.length; card++) {
+                deck[card] = Card.bit(card);
+            }
+
+            for (long n = 0; n < hands; n++) {
+                // deal five cards: partial Fisher-Yates over the front of the deck
+                long hand = 0;
+                for (int i = 0; i < 5; i++) {
+                    hand |= swap(deck, i, i + random.nextInt(deck.length - i));
+                }
+
+                // the replacements come from the next cards of the same shuffle
+                long held = strategy.heldCards(hand);
+                for (int i = 5, need = 5 - Long.bitCount(held); need > 0; i++, need--) {
+                    held |= swap(deck, i, i + random.nextInt(deck.length - i));
+                }
+                int category = paytable.evaluate(held);
+                long payout = paytable.payout(held, category);
+                tally.counts[category]++;
+                tally.paid += payout;
+                tally.squares += payout * payout;
+            }
+            return tally;
+        }
+
+        /* swaps deck[i] and deck[j], returns the card now at i */
+        private static long swap(long[] deck, int i, int j) {
+            long card = deck[j];
+            deck[j] = deck[i];
+            deck[i] = card;
+            return card;
+        }
+    }
+
+    /* Quick test: simulate the simple strategy, number of hands as argument */
+    public static void main(String args[]) {
+        long hands = args.length > 0 ? Long.parseLong(args[0]) : 10000000L;
+        Paytable paytable = Paytable.JACKS_OR_BETTER;
+
+        long start = System.nanoTime();
+        Result result = run(hands, Strategy.KEEP_PAYING, paytable, 42);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(result);
+        System.out.printf("%.1f M hands/s on %d threads%n", hands * 1000.0 / elapsed,
+                ForkJoinPool.commonPool().getParallelism());
+
+        start = System.nanoTime();
+        result = run(hands, Strategy.KEEP_PAYING, paytable, DeckRandom.xoshiro(42));
+        elapsed = System.nanoTime() - start;
+        System.out.printf("xoshiro256**: RTP %.6f, %.1f M hands/s%n", result.rtp(), hands * 1000.0 / elapsed);
+    }
+}
@@ -0,0 +1,68 @@
+package game;
+
+/**
+ * interface Strategy decides which cards of a dealt hand to keep.
+ *
+ * Hands and held cards use the packed encoding of HandEvaluator. Strategies
+ * are called from many threads at once and must not keep mutable state.
+ */
+interface Strategy {
+
+    /**
+     * Returns the bits of the cards to keep from a packed 5-card hand.
+     */
+    long heldCards(long hand);
+
+    /* draws five new cards every time */
+    Strategy DRAW_ALL = hand -> 0;
+
+    /* keeps straights and better, otherwise keeps any pair, trips or quads */
+    Strategy KEEP_PAYING = hand -> {
+        int category = HandEvaluator.evaluate(hand);
+        if (category >= HandEvaluator.STRAIGHT) {
+            return hand;
+        }
+        int c = (int) hand & HandEvaluator.RANK_MASK;
+        int d = (int) (hand >>> 16) & HandEvaluator.RANK_MASK;
+        int h = (int) (hand >>> 32) & HandEvaluator.RANK_MASK;
+        int s = (int) (hand >>> 48) & HandEvaluator.RANK_MASK;
+        long pairs = (c & d) | (h & s) | ((c | d) & (h | s));
+        return hand & (pairs | pairs << 16 | pairs << 32 | pairs << 48);
+    };
+
+    /**
+     * Returns the exact optimal strategy for a paytable, solving each hand
+     * with HoldSolver. Correct but slow; use a StrategyTable for long runs.
+     * Hands without the joker are solved once per suit-isomorphism class
+     * (see HandClasses) and the hold is kept for the class.
+     */
+    static Strategy optimal(Paytable paytable) {
+        ClassCache<Long> holds = new ClassCache<>();
+        return hand -> {
+            if ((hand & Card.bit(Card.JOKER)) != 0) {
+                return solve(hand, paytable);
+            }
+            int code = HandClasses.code(hand);
+            long held = holds.get(HandClasses.id(code), id -> solve(HandClasses.hand(id), paytable));
+            return HandClasses.original(held, code);
+        };
+    }
+
+    /* the cards of the best hold of a hand, solved with HoldSolver */
+    private static long solve(long hand, Paytable paytable) {
+        long[] cards = new long[5];
+        long rest = hand;
+        for (int i = 0; i < 5; i++) {
+            cards[i] = rest & -rest;
+            rest ^= cards[i];
+        }
+        int hold = HoldSolver.bestHold(HoldSolver.expectedValuesSequential(cards, paytable));
+        long held = 0;
+        for (int i = 0; i < 5; i++) {
+            if ((hold & (1 << i)) != 0) {
+                held |= cards[i];
+            }
+        }
+        return held;
+    }
+}
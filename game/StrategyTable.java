@@ -0,0 +1,263 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * class StrategyTable holds the best hold and its expected return for every
+ * one of the 2,598,960 starting hands of one paytable. Joker games, with
+ * 53-card decks, have no strategy table.
+ *
+ * File layout (little endian):
+ *   header  1024 bytes: magic, version, number of hands, length n of the
+ *                     paytable array, n ints of Paytable.toArray(), zero
+ *                     padding
+ *   holds   1 byte per hand: best hold mask over the hand's cards in
+ *                     ascending card index order (see index())
+ *   evs     1 float per hand: expected return per unit bet of that hold
+ *
+ * Hands are stored by their colex rank, so a lookup is a few shifts and two
+ * absolute reads from the mapped buffer; nothing is copied onto the heap.
+ * build() makes the same layout in a heap buffer instead of a file.
+ */
+final class StrategyTable implements Strategy {
+
+    /* "VPST" */
+    static final int MAGIC = 0x56505354;
+    static final int VERSION = 3;
+
+    /* C(52, 5) */
+    static final int HANDS = 2598960;
+
+    private static final int HEADER = 1024;
+    private static final int HOLDS_OFFSET = HEADER;
+    private static final int EVS_OFFSET = HOLDS_OFFSET + HANDS;
+    static final int FILE_SIZE = EVS_OFFSET + 4 * HANDS;
+
+    /* BINOMIAL[n][k] = C(n, k) for n < 52, k <= 5 */
+    private static final int[][] BINOMIAL = new int[52][6];
+
+    static {
+        for (int n = 0; n < 52; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= 5 && k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private final ByteBuffer table;
+    private final Paytable paytable;
+
+    private StrategyTable(ByteBuffer table, Paytable paytable) {
+        this.table = table;
+        this.paytable = paytable;
+    }
+
+    /**
+     * Maps a strategy file into memory.
+     *
+     * @param file     file written by generate()
+     * @param paytable paytable the table must have been generated for
+     * @throws IOException if the file cannot be read or is not a strategy
+     *                     table for this paytable
+     */
+    static StrategyTable load(Path file, Paytable paytable) throws IOException {
+        checkDeck(paytable);
+        MappedByteBuffer table;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != FILE_SIZE) {
+                throw new IOException("Not a strategy table: " + file);
+            }
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+        }
+        table.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION || table.getInt(8) != HANDS) {
+            throw new IOException("Not a strategy table: " + file);
+        }
+        int[] payouts = paytable.toArray();
+        boolean same = table.getInt(12) == payouts.length;
+        for (int i = 0; same && i < payouts.length; i++) {
+            same = table.getInt(16 + 4 * i) == payouts[i];
+        }
+        if (!same) {
+            throw new IOException("Strategy table is for another paytable: " + file);
+        }
+        return new StrategyTable(table, paytable);
+    }
+
+    /**
+     * Returns the colex rank (0 to HANDS - 1) of a packed 5-card hand.
+     */
+    static int index(long hand) {
+        int index = 0;
+        for (int k = 1; k <= 5; k++) {
+            int bit = Long.numberOfTrailingZeros(hand);
+            hand &= hand - 1;
+            index += BINOMIAL[bit - 3 * (bit >>> 4)][k];
+        }
+        return index;
+    }
+
+    /**
+     * Returns the bits of the cards to keep from a packed 5-card hand.
+     */
+    @Override
+    public long heldCards(long hand) {
+        int hold = table.get(HOLDS_OFFSET + index(hand));
+        long held = 0;
+        for (int i = 0; i < 5; i++) {
+            long low = hand & -hand;
+            if ((hold & (1 << i)) != 0) {
+                held |= low;
+            }
+            hand ^= low;
+        }
+        return held;
+    }
+
+    /**
+     * Returns the expected return per unit bet of the best hold.
+     */
+    float expectedValue(long hand) {
+        return table.getFloat(EVS_OFFSET + 4 * index(hand));
+    }
+
+    /**
+     * Returns the paytable this table was generated for.
+     */
+    Paytable paytable() {
+        return paytable;
+    }
+
+    /**
+     * Solves every starting hand and keeps the table on the heap.
+     */
+    static StrategyTable build(Paytable paytable) {
+        checkDeck(paytable);
+        long[] classHolds = new long[HandClasses.CLASSES];
+        float[] classEvs = new float[HandClasses.CLASSES];
+        new ExactAnalyzer(paytable).solveClasses(classHolds, classEvs);
+        return of(paytable, classHolds, classEvs);
+    }
+
+    /**
+     * Lays out a table on the heap from the best hold and expected return
+     * of the canonical hand of every suit-isomorphism class.
+     */
+    static StrategyTable of(Paytable paytable, long[] classHolds, float[] classEvs) {
+        checkDeck(paytable);
+        byte[] holds = new byte[HANDS];
+        float[] evs = new float[HANDS];
+        expand(classHolds, classEvs, holds, evs);
+        return new StrategyTable(image(paytable, holds, evs), paytable);
+    }
+
+    /**
+     * Solves every starting hand and writes the table to file.
+     */
+    static void generate(Path file, Paytable paytable) throws IOException {
+        write(file, build(paytable).table);
+    }
+
+    /*
+     * Gives each starting hand the hold of its suit-isomorphism class in its
+     * own suits. The classes are solved exactly by ExactAnalyzer in seconds,
+     * where HoldSolver would evaluate about 3.5e11 hands.
+     */
+    private static void expand(long[] classHolds, float[] classEvs, byte[] holds, float[] evs) {
+        for (int e = 4; e < 52; e++) {
+            for (int d = 3; d < e; d++) {
+                for (int c = 2; c < d; c++) {
+                    for (int b = 1; b < c; b++) {
+                        for (int a = 0; a < b; a++) {
+                            long hand = Card.bit(a) | Card.bit(b) | Card.bit(c) | Card.bit(d) | Card.bit(e);
+                            int code = HandClasses.code(hand);
+                            long held = HandClasses.original(classHolds[HandClasses.id(code)], code);
+                            int hold = 0;
+                            for (int i = 0; i < 5; i++) {
+                                long low = hand & -hand;
+                                if ((held & low) != 0) {
+                                    hold |= 1 << i;
+                                }
+                                hand ^= low;
+                            }
+                            int index = BINOMIAL[a][1] + BINOMIAL[b][2] + BINOMIAL[c][3]
+                                    + BINOMIAL[d][4] + BINOMIAL[e][5];
+                            holds[index] = (byte) hold;
+                            evs[index] = classEvs[HandClasses.id(code)];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkDeck(Paytable paytable) {
+        if (paytable.cards() != Card.CARDS) {
+            throw new IllegalArgumentException("No strategy table for a joker deck: " + paytable.name());
+        }
+    }
+
+    /* lays out a complete table */
+    static ByteBuffer image(Paytable paytable, byte[] holds, float[] evs) {
+        int[] payouts = paytable.toArray();
+        ByteBuffer out = ByteBuffer.allocate(FILE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(HANDS).putInt(payouts.length);
+        for (int payout : payouts) {
+            out.putInt(payout);
+        }
+        out.position(HOLDS_OFFSET);
+        out.put(holds);
+        out.asFloatBuffer().put(evs);
+        out.position(0);
+        return out;
+    }
+
+    /* writes a complete table file */
+    static void write(Path file, ByteBuffer image) throws IOException {
+        ByteBuffer out = image.duplicate();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* Quick test: look up a few hands in a table file given on the command line,
+     * or generate one when "generate" is passed as second argument */
+    public static void main(String args[]) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: java game.StrategyTable file [generate]");
+            return;
+        }
+        Paytable paytable = Paytable.JACKS_OR_BETTER;
+        Path file = Paths.get(args[0]);
+        if (args.length > 1 && args[1].equals("generate")) {
+            generate(file, paytable);
+        }
+
+        long start = System.nanoTime();
+        StrategyTable strategy = load(file, paytable);
+        System.out.println("Loaded in " + (System.nanoTime() - start) / 1000 + " us");
+
+        long hand = HandEvaluator.bit(11, 3) | HandEvaluator.bit(11, 1) | HandEvaluator.bit(10, 3)
+                | HandEvaluator.bit(12, 3) | HandEvaluator.bit(4, 0);
+        System.out.println("Hold " + Long.toHexString(strategy.heldCards(hand))
+                + " EV " + strategy.expectedValue(hand));
+    }
+}
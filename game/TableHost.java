@@ -0,0 +1,382 @@
+package game;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * class TableHost runs many independent GameSessions in one JVM.
+ *
+ * Every table owns its session, deck and random stream and a bounded mailbox
+ * of commands. A table is run by at most one thread at a time and gives the
+ * thread back after a small batch of commands, so a busy table cannot keep
+ * others waiting; a full mailbox rejects new commands instead of queueing
+ * without bound. Tables run on virtual threads when the JVM has them (Java
+ * 21+), otherwise on a work-stealing pool.
+ *
+ * Results are CompletableFutures completed on the table's thread: clients
+ * should attach slow callbacks with the *Async methods. With a DeckPool,
+ * tables whose deck fits the pool take pre-shuffled decks from it. With
+ * SessionSnapshots, every table's session is saved under the table id, and
+ * recover() reopens the tables saved before a crash.
+ */
+class TableHost implements AutoCloseable {
+
+    /* commands a table runs before giving its thread back */
+    private static final int BATCH = 16;
+
+    private final ExecutorService executor;
+    private final Paytable paytable;
+    private final int mailboxCapacity;
+    private final HandJournal journal;
+    private final DeckPool pool;
+    private final SessionSnapshots snapshots;
+    private final ConcurrentHashMap<Long, Table> tables = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a host.
+     *
+     * @param paytable        default paytable of new tables
+     * @param mailboxCapacity pending commands per table before rejecting
+     */
+    TableHost(Paytable paytable, int mailboxCapacity) {
+        this(paytable, mailboxCapacity, null);
+    }
+
+    /**
+     * Creates a host whose tables record their rounds in a journal, with the
+     * table id as session id.
+     */
+    TableHost(Paytable paytable, int mailboxCapacity, HandJournal journal) {
+        this(paytable, mailboxCapacity, journal, null);
+    }
+
+    /**
+     * Creates a host whose tables deal from pre-shuffled decks of a pool,
+     * which the host does not close.
+     *
+     * @param journal journal of the rounds, or null
+     * @param pool    pool of decks for tables whose game has as many cards,
+     *                or null
+     */
+    TableHost(Paytable paytable, int mailboxCapacity, HandJournal journal, DeckPool pool) {
+        this(paytable, mailboxCapacity, journal, pool, null);
+    }
+
+    /**
+     * Creates a host whose tables' sessions are saved in snapshots, which the
+     * host does not close.
+     *
+     * @param snapshots snapshots of the sessions, or null
+     */
+    TableHost(Paytable paytable, int mailboxCapacity, HandJournal journal, DeckPool pool,
+            SessionSnapshots snapshots) {
+        this.executor = newExecutor();
+        this.paytable = paytable;
+        this.mailboxCapacity = mailboxCapacity;
+        this.journal = journal;
+        this.pool = pool;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task when the JVM
+     * supports it, otherwise a work-stealing pool over all cores.
+     */
+    static ExecutorService newExecutor() {
+        return newExecutor(Executors::newWorkStealingPool);
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task when the JVM
+     * supports it, otherwise the fallback, e.g. a thread per task for tasks
+     * that block.
+     */
+    static ExecutorService newExecutor(Supplier<ExecutorService> fallback) {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return fallback.get();
+        }
+    }
+
+    /**
+     * Opens a table with its own session and deck, on the default paytable.
+     */
+    Table open(int balance) {
+        return open(balance, paytable);
+    }
+
+    /**
+     * Opens a table with its own session and deck.
+     */
+    Table open(int balance, Paytable paytable) {
+        return open(balance, paytable, DeckRandom.splittable());
+    }
+
+    /**
+     * Opens a table whose deck shuffles with a generator of its own, e.g. a
+     * seeded one to replay a session.
+     */
+    Table open(int balance, Paytable paytable, DeckRandom random) {
+        long id = nextId.incrementAndGet();
+        GameSession session = new GameSession(balance, deck(paytable, random), paytable, 1);
+        if (snapshots != null) {
+            snapshots.register(id, session);
+        }
+        return add(id, session);
+    }
+
+    /**
+     * Reopens every table saved in the snapshots, with its id, balance and
+     * round in progress (see GameSession.restore); new tables get higher ids.
+     *
+     * @param paytables the games that may have been saved, looked up by
+     *                  Paytable.id()
+     * @return number of tables reopened, 0 without snapshots
+     * @throws IllegalStateException if a saved game is not among paytables;
+     *                               no table is reopened then
+     */
+    int recover(Paytable... paytables) {
+        if (snapshots == null) {
+            return 0;
+        }
+        Map<Integer, Paytable> games = Paytable.registry(paytables);
+        for (int n = 0; n < snapshots.saved(); n++) {
+            if (!games.containsKey(snapshots.game(n))) {
+                throw new IllegalStateException("Session " + snapshots.id(n) + " played unknown paytable id "
+                        + snapshots.game(n));
+            }
+        }
+        for (int n = 0; n < snapshots.saved(); n++) {
+            long id = snapshots.id(n);
+            Paytable paytable = games.get(snapshots.game(n));
+            add(id, snapshots.restore(n, paytable, deck(paytable, DeckRandom.splittable())));
+            nextId.accumulateAndGet(id, Math::max);
+        }
+        return snapshots.saved();
+    }
+
+    private Decks deck(Paytable paytable, DeckRandom random) {
+        Decks deck = new Decks(1, paytable.jokers(), random);
+        if (pool != null && pool.cards() == paytable.cards()) {
+            deck.pool(pool);
+        }
+        return deck;
+    }
+
+    private Table add(long id, GameSession session) {
+        if (journal != null) {
+            session.journal(journal, id);
+        }
+        Table table = new Table(id, session);
+        tables.put(table.id, table);
+        return table;
+    }
+
+    /**
+     * Returns an open table, or null.
+     */
+    Table table(long id) {
+        return tables.get(id);
+    }
+
+    /**
+     * Closes a table; commands already queued still run, then the round in
+     * progress is abandoned (see GameSession.abandon).
+     */
+    void close(long id) {
+        Table table = tables.remove(id);
+        if (table != null) {
+            table.close();
+            if (snapshots != null) {
+                snapshots.remove(id);
+            }
+        }
+    }
+
+    /* number of open tables */
+    int size() {
+        return tables.size();
+    }
+
+    /* number of commands refused because a mailbox was full */
+    long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        for (Table table : tables.values()) {
+            table.close();
+        }
+        tables.clear();
+        executor.shutdown();
+    }
+
+    /**
+     * class Table: one session and its mailbox
+     */
+    final class Table implements Runnable {
+
+        private final long id;
+        private final GameSession session;
+        private final ArrayBlockingQueue<Command> mailbox;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Table(long id, GameSession session) {
+            this.id = id;
+            this.session = session;
+            this.mailbox = new ArrayBlockingQueue<>(mailboxCapacity);
+        }
+
+        long id() {
+            return id;
+        }
+
+        CompletableFuture<GameSession.Round> bet(int amount) {
+            return submit(s -> s.bet(amount));
+        }
+
+        CompletableFuture<GameSession.Round> deal() {
+            return submit(GameSession::deal);
+        }
+
+        CompletableFuture<GameSession.Round> draw(int holdMask) {
+            return submit(s -> s.draw(holdMask));
+        }
+
+        CompletableFuture<GameSession.Round> settle() {
+            return submit(GameSession::settle);
+        }
+
+        /* abandons the round once the commands queued before have run */
+        private void close() {
+            closed = true;
+            schedule();
+        }
+
+        private CompletableFuture<GameSession.Round> submit(Function<GameSession, GameSession.Round> action) {
+            Command command = new Command(action);
+            if (!mailbox.offer(command)) {
+                rejected.increment();
+                command.result.completeExceptionally(
+                        new RejectedExecutionException("Table " + id + " is busy"));
+                return command.result;
+            }
+            schedule();
+            return command.result;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    Command command;
+                    while ((command = mailbox.poll()) != null) {
+                        command.result.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int n = 0; n < BATCH; n++) {
+                Command command = mailbox.poll();
+                if (command == null) {
+                    break;
+                }
+                command.run(session);
+            }
+            if (closed && mailbox.isEmpty()) {
+                session.abandon();
+            }
+            scheduled.set(false);
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /* a session step and the future of its result */
+    private static final class Command {
+
+        final Function<GameSession, GameSession.Round> action;
+        final CompletableFuture<GameSession.Round> result = new CompletableFuture<>();
+
+        Command(Function<GameSession, GameSession.Round> action) {
+            this.action = action;
+        }
+
+        void run(GameSession session) {
+            try {
+                result.complete(action.apply(session));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /* Quick test: play rounds on many tables at once */
+    public static void main(String args[]) throws Exception {
+        int numberTables = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = 20;
+
+        try (DeckPool pool = new DeckPool(1, 0, 1024, 1, DeckRandom.splittable());
+                TableHost host = new TableHost(Paytable.JACKS_OR_BETTER, 8, null, pool)) {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] players = new CompletableFuture<?>[numberTables];
+            for (int i = 0; i < numberTables; i++) {
+                Table table = host.open(1000);
+                CompletableFuture<GameSession.Round> round = CompletableFuture.completedFuture(null);
+                for (int r = 0; r < rounds; r++) {
+                    round = round.thenCompose(x -> table.bet(1))
+                            .thenCompose(x -> table.deal())
+                            .thenCompose(x -> table.draw(holdMask(x)))
+                            .thenCompose(x -> table.settle());
+                }
+                players[i] = round;
+            }
+            CompletableFuture.allOf(players).get();
+            long elapsed = System.nanoTime() - start;
+
+            long total = 0;
+            for (CompletableFuture<?> player : players) {
+                total += ((GameSession.Round) player.get()).balance();
+            }
+            System.out.println(numberTables + " tables x " + rounds + " rounds in " + elapsed / 1000000
+                    + " ms, average balance " + (double) total / numberTables
+                    + ", rejected " + host.rejected());
+            System.out.println(pool);
+        }
+    }
+
+    /* hold mask of the cards the simple strategy keeps */
+    private static int holdMask(GameSession.Round round) {
+        long held = Strategy.KEEP_PAYING.heldCards(round.hand());
+        int holdMask = 0;
+        for (int i = 0; i < 5; i++) {
+            if ((held & Card.bit(round.card(i))) != 0) {
+                holdMask |= 1 << i;
+            }
+        }
+        return holdMask;
+    }
+}
@@ -0,0 +1,171 @@
+package game;
+
+/**
+ * class WildEvaluator classifies 5-card hands of the wild-card games, Deuces
+ * Wild and Joker Poker, without allocating or trying substitutes.
+ *
+ * Hands use the packed encoding of HandEvaluator (the joker is Card.JOKER).
+ * The wild cards are masked out and counted; what the remaining natural cards
+ * can become then depends only on how many wilds there are, the largest group
+ * of equal ranks and whether the natural ranks fit in a straight, which is a
+ * lookup in a table indexed with the 13-bit rank mask.
+ */
+public final class WildEvaluator {
+
+    /* wild-card games (see Paytable) */
+    static final int NONE = 0;
+    static final int DEUCES = 1;
+    static final int JOKER = 2;
+
+    /* bits of the four 2s */
+    private static final long DEUCE_BITS = HandEvaluator.bit(2, 0) | HandEvaluator.bit(2, 1)
+            | HandEvaluator.bit(2, 2) | HandEvaluator.bit(2, 3);
+
+    private static final long JOKER_BIT = Card.bit(Card.JOKER);
+
+    /* rank masks of K and A, the paying pairs of Joker Poker */
+    private static final int KINGS_OR_BETTER = (1 << 12) | 1;
+
+    /* for up to five different ranks: ROYAL_FLUSH if wilds can complete them
+     * to 10-A, STRAIGHT if to another straight, otherwise NO_PAIR */
+    private static final byte[] STRAIGHTS = new byte[HandEvaluator.RANK_MASK + 1];
+
+    static {
+        for (int ranks = 1; ranks <= HandEvaluator.RANK_MASK; ranks++) {
+            if (Integer.bitCount(ranks) > 5) {
+                continue;
+            }
+            if ((ranks & ~HandEvaluator.BROADWAY) == 0) {
+                STRAIGHTS[ranks] = HandEvaluator.ROYAL_FLUSH;
+                continue;
+            }
+            for (int low = 0; low <= 8; low++) {
+                if ((ranks & ~(0x1F << low)) == 0) {
+                    STRAIGHTS[ranks] = HandEvaluator.STRAIGHT;
+                    break;
+                }
+            }
+        }
+    }
+
+    private WildEvaluator() {
+    }
+
+    /**
+     * Classifies a packed 5-card Deuces Wild hand: 2s are wild and pairs
+     * are ranked like Jacks or Better.
+     *
+     * @return a category constant of HandEvaluator
+     */
+    public static int evaluateDeucesWild(long hand) {
+        long naturals = naturals(hand, DEUCES);
+        return evaluate(naturals, 5 - Long.bitCount(naturals), HandEvaluator.HIGH_RANKS);
+    }
+
+    /**
+     * Classifies a packed 5-card Joker Poker hand: the joker is wild and a
+     * HIGH_PAIR is Kings or better.
+     *
+     * @return a category constant of HandEvaluator
+     */
+    public static int evaluateJokerPoker(long hand) {
+        long naturals = naturals(hand, JOKER);
+        return evaluate(naturals, 5 - Long.bitCount(naturals), KINGS_OR_BETTER);
+    }
+
+    /**
+     * Returns the cards of a packed hand that are not wild in a game.
+     *
+     * @param wild NONE, DEUCES or JOKER
+     */
+    static long naturals(long hand, int wild) {
+        switch (wild) {
+            case DEUCES:
+                return hand & ~DEUCE_BITS;
+            case JOKER:
+                return hand & ~JOKER_BIT;
+            default:
+                return hand;
+        }
+    }
+
+    /*
+     * Best category of the natural cards plus a number of wilds.
+     *
+     * @param highRanks rank mask of the pairs that count as HIGH_PAIR
+     */
+    private static int evaluate(long naturals, int wilds, int highRanks) {
+        if (wilds == 4) {
+            return HandEvaluator.FOUR_WILDS;
+        }
+        int c = (int) naturals & HandEvaluator.RANK_MASK;
+        int d = (int) (naturals >>> 16) & HandEvaluator.RANK_MASK;
+        int h = (int) (naturals >>> 32) & HandEvaluator.RANK_MASK;
+        int s = (int) (naturals >>> 48) & HandEvaluator.RANK_MASK;
+        int ranks = c | d | h | s;
+
+        // ranks held by at least two suits
+        int pairs = (c & d) | (h & s) | ((c | d) & (h | s));
+        if (pairs == 0) {
+            boolean suited = (c == ranks) | (d == ranks) | (h == ranks) | (s == ranks);
+            int straight = STRAIGHTS[ranks];
+            if (suited && straight == HandEvaluator.ROYAL_FLUSH) {
+                return wilds == 0 ? HandEvaluator.ROYAL_FLUSH : HandEvaluator.WILD_ROYAL_FLUSH;
+            }
+            if (suited && straight == HandEvaluator.STRAIGHT) {
+                return HandEvaluator.STRAIGHT_FLUSH;
+            }
+            if (wilds == 3) {
+                return HandEvaluator.FOUR_OF_A_KIND;
+            }
+            if (suited) {
+                return HandEvaluator.FLUSH;
+            }
+            if (straight != HandEvaluator.NO_PAIR) {
+                return HandEvaluator.STRAIGHT;
+            }
+            if (wilds == 2) {
+                return HandEvaluator.THREE_OF_A_KIND;
+            }
+            if (wilds == 1) {
+                // the wild pairs the highest card
+                return (ranks & highRanks) != 0 ? HandEvaluator.HIGH_PAIR : HandEvaluator.LOW_PAIR;
+            }
+            return HandEvaluator.NO_PAIR;
+        }
+
+        // size of the largest group of one rank, plus the wilds
+        int trips = (c & d & (h | s)) | (h & s & (c | d));
+        int group = ((c & d & h & s) != 0 ? 4 : trips != 0 ? 3 : 2) + wilds;
+        if (group >= 5) {
+            return HandEvaluator.FIVE_OF_A_KIND;
+        }
+        if (group == 4) {
+            return HandEvaluator.FOUR_OF_A_KIND;
+        }
+        if (trips != 0) {
+            return pairs != trips ? HandEvaluator.FULL_HOUSE : HandEvaluator.THREE_OF_A_KIND;
+        }
+        boolean twoPair = (pairs & (pairs - 1)) != 0;
+        if (wilds == 1) {
+            return twoPair ? HandEvaluator.FULL_HOUSE : HandEvaluator.THREE_OF_A_KIND;
+        }
+        if (twoPair) {
+            return HandEvaluator.TWO_PAIR;
+        }
+        return (pairs & highRanks) != 0 ? HandEvaluator.HIGH_PAIR : HandEvaluator.LOW_PAIR;
+    }
+
+    /* Quick test: classify a few wild hands */
+    public static void main(String args[]) {
+        long wildRoyal = HandEvaluator.bit(2, 0) | HandEvaluator.bit(10, 3) | HandEvaluator.bit(11, 3)
+                | HandEvaluator.bit(13, 3) | HandEvaluator.bit(1, 3);
+        long fiveSevens = HandEvaluator.bit(2, 0) | HandEvaluator.bit(2, 1) | HandEvaluator.bit(7, 3)
+                | HandEvaluator.bit(7, 1) | HandEvaluator.bit(7, 2);
+        long jokerKings = JOKER_BIT | HandEvaluator.bit(13, 0) | HandEvaluator.bit(9, 1)
+                | HandEvaluator.bit(5, 2) | HandEvaluator.bit(3, 3);
+        System.out.println("Deuces wild royal: " + evaluateDeucesWild(wildRoyal));
+        System.out.println("Deuces five sevens: " + evaluateDeucesWild(fiveSevens));
+        System.out.println("Joker with a king: " + evaluateJokerPoker(jokerKings));
+    }
+}
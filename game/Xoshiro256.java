@@ -0,0 +1,128 @@
+package game;
+
+/**
+ * class Xoshiro256 is the xoshiro256** generator of Blackman and Vigna: 256
+ * bits of state, period 2^256 - 1, a few shifts and rotations per number.
+ *
+ * jump() moves a generator 2^128 numbers ahead, so n generators made by
+ * copying and jumping one generator never overlap in any practical run.
+ * split() seeds a new generator from this one's output instead, which also
+ * works when tasks split again and again, as fork-join tasks do.
+ */
+final class Xoshiro256 implements DeckRandom {
+
+    /* polynomial of jump() */
+    private static final long[] JUMP = {
+        0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL};
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    /**
+     * Creates a generator whose state is expanded from a seed with SplitMix64.
+     */
+    Xoshiro256(long seed) {
+        seed(seed);
+    }
+
+    private Xoshiro256(long s0, long s1, long s2, long s3) {
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+    }
+
+    /**
+     * Restarts this generator as if it had just been created from a seed.
+     */
+    void seed(long seed) {
+        s0 = mix(seed += 0x9e3779b97f4a7c15L);
+        s1 = mix(seed += 0x9e3779b97f4a7c15L);
+        s2 = mix(seed += 0x9e3779b97f4a7c15L);
+        s3 = mix(seed + 0x9e3779b97f4a7c15L);
+    }
+
+    /* SplitMix64 output function */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    @Override
+    public DeckRandom split() {
+        return new Xoshiro256(mix(nextLong()), mix(nextLong()), mix(nextLong()), mix(nextLong()));
+    }
+
+    /* a generator in the same state as this one */
+    Xoshiro256 copy() {
+        return new Xoshiro256(s0, s1, s2, s3);
+    }
+
+    /**
+     * Moves this generator 2^128 numbers ahead.
+     */
+    void jump() {
+        long t0 = 0;
+        long t1 = 0;
+        long t2 = 0;
+        long t3 = 0;
+        for (long word : JUMP) {
+            for (int b = 0; b < 64; b++) {
+                if ((word & (1L << b)) != 0) {
+                    t0 ^= s0;
+                    t1 ^= s1;
+                    t2 ^= s2;
+                    t3 ^= s3;
+                }
+                nextLong();
+            }
+        }
+        s0 = t0;
+        s1 = t1;
+        s2 = t2;
+        s3 = t3;
+    }
+
+    /**
+     * Returns n generators 2^128 numbers apart, starting at this one's state.
+     * This generator is left past the last of them.
+     */
+    Xoshiro256[] streams(int n) {
+        Xoshiro256[] streams = new Xoshiro256[n];
+        for (int i = 0; i < n; i++) {
+            streams[i] = copy();
+            jump();
+        }
+        return streams;
+    }
+
+    /* Quick test: reference output for seed state 1, 2, 3, 4 and speed */
+    public static void main(String args[]) {
+        Xoshiro256 random = new Xoshiro256(1, 2, 3, 4);
+        // expected 11520, 0, 1509978240, 1215971899390074240
+        for (int i = 0; i < 4; i++) {
+            System.out.println(random.nextLong());
+        }
+
+        int[] indices = new int[5 * 1000000];
+        long start = System.nanoTime();
+        random.fillIndices(indices, 0, 52, 5, 1000000);
+        System.out.println("1M deals of 5 in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}